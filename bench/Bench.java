@@ -0,0 +1,290 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Microbenchmarks for the Board engine, run in forked JVMs with warmup.
+//
+// javac -Xdiags:verbose -d build src/* bench/* && java -cp build Bench [options] [filter]
+//
+//   -input random|all   positions from Board.genRandom(n) or Board.genAll() (default: both)
+//   -n N                number of random positions (default: 10000)
+//   -f N                forks per benchmark, 0 runs in this JVM (default: 2)
+//   -wi N / -i N        warmup / measurement iterations (default: 5 / 5)
+//   -t MS               time per iteration in ms (default: 1000)
+//   -prof gc            also report allocation rate, summed over all live threads
+//                       so fork-join benchmarks count their workers too
+public class Bench {
+    interface Op {
+        long run(int i);
+    }
+
+    private static final int BATCH = 256;
+    // op indices wrap here, so i * 64 stays a positive int
+    private static final int INDEX_MASK = (1 << 24) - 1;
+    private static volatile long sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Op> benchmarks = new LinkedHashMap<>();
+    private Board[] boards;
+    private TicTacToe[] games;
+
+
+    public Bench(String input, int n) {
+        this.boards = input.equals("all") ? Board.genAll() : Board.genRandom(n);
+
+        List<TicTacToe> games = new ArrayList<>();
+        for (Board b : this.boards) {
+            if (b.checkWin() == Board.EMPTY) {
+                games.add(Bench.toGame(b));
+            }
+        }
+        this.games = games.toArray(new TicTacToe[0]);
+
+        this.define();
+    }
+
+    private void define() {
+        Board[] boards = this.boards;
+        TicTacToe[] games = this.games;
+
+        this.benchmarks.put("checkWin", i -> boards[i % boards.length].checkWin());
+
+        // 64 boards per op, the per-object loop against the batch lookup
+        int[] packed = new int[boards.length + 64];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = boards[i % boards.length].getField();
+        }
+        byte[] out = new byte[packed.length];
+        this.benchmarks.put("checkWin64", i -> {
+            int from = (i * 64) % boards.length;
+            long acc = 0;
+            for (int j = from; j < from + 64; j++) {
+                acc += boards[j % boards.length].checkWin();
+            }
+            return acc;
+        });
+        this.benchmarks.put("checkWinBatch64", i -> {
+            int from = (i * 64) % boards.length;
+            Board.checkWin(packed, from, from + 64, out);
+            return out[from + 63];
+        });
+        this.benchmarks.put("minimaxUncached", i -> boards[i % boards.length].minimaxUncached((i & 1) == 0));
+        this.benchmarks.put("minimax", i -> boards[i % boards.length].minimax((i & 1) == 0));
+        this.benchmarks.put("bestMoves", i -> boards[i % boards.length].bestMoves((i & 1) == 0).size());
+        this.benchmarks.put("precompute", i -> {
+            Board.clear();
+            Board.precompute();
+            return i;
+        });
+        this.benchmarks.put("newBoard", i -> new Board(games[i % games.length]).get(i % Board.THREE_SQ));
+        CStrat x = new CStrat('X');
+        CStrat o = new CStrat('O');
+        this.benchmarks.put("makeMove", i -> ((i & 1) == 0 ? x : o).makeMove(games[i % games.length]).getSector());
+        int[] fields = new int[games.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = games[i].getField();
+        }
+        this.benchmarks.put("makeMovePacked", i -> x.makeMove(fields[i % fields.length], (i & 1) == 0));
+        CStrat anyBest = new CStrat('X', Board.solver());
+        this.benchmarks.put("makeMoveAnyBest", i -> anyBest.makeMove(fields[i % fields.length], (i & 1) == 0));
+        // decisions with the side to move the game would have, the move
+        // table against re-evaluating the children
+        boolean[] toMove = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            toMove[i] = Retrograde.isXToMove(fields[i]);
+        }
+        this.benchmarks.put("makeMoveToMove", i -> anyBest.makeMove(fields[i % fields.length], toMove[i % fields.length]));
+        Solver solver = Board.solver();
+        this.benchmarks.put("bestMovesMask", i -> solver.bestMovesMask(fields[i % fields.length], toMove[i % fields.length]));
+        this.benchmarks.put("bestMovesMaskSearch", i -> solver.bestMovesMaskSearch(fields[i % fields.length], toMove[i % fields.length]));
+        this.benchmarks.put("retrograde", i -> Retrograde.solve(ForkJoinPool.commonPool()).entry(0));
+        this.benchmarks.put("perft", i -> Perft.count(0).games());
+        this.benchmarks.put("perftParallel", i -> Perft.count(0, ForkJoinPool.commonPool()).games());
+        JStrat j = new JStrat('X');
+        this.benchmarks.put("jstratMove", i -> j.makeMove(fields[i % fields.length], (i & 1) == 0));
+        MctsStrat m = new MctsStrat('X', new MnkBoard(Board.THREE, Board.THREE, Board.THREE), 1000, 0, 1, 1, true);
+        this.benchmarks.put("mctsMove1000", i -> m.makeMove(fields[i % fields.length], (i & 1) == 0));
+    }
+
+    private static TicTacToe toGame(Board b) {
+        int xMask = 0, oMask = 0;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            if (b.get(i) == Board.X) {
+                xMask |= 1 << i;
+            } else if (b.get(i) == Board.O) {
+                oMask |= 1 << i;
+            }
+        }
+        TicTacToe game = new TicTacToe();
+        game.setMasks(xMask, oMask);
+        return game;
+    }
+
+
+    // returns {ops, nanos, allocated bytes} of one iteration
+    private static long[] iteration(Op op, long millis) {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        long acc = 0;
+        int i = 0;
+
+        long bytes = Bench.allocatedBytes();
+        long start = System.nanoTime();
+        long now;
+        do {
+            for (int j = 0; j < Bench.BATCH; j++) {
+                acc ^= op.run(i);
+                i = (i + 1) & Bench.INDEX_MASK;
+            }
+            ops += Bench.BATCH;
+            now = System.nanoTime();
+        } while (now < deadline);
+        bytes = Bench.allocatedBytes() - bytes;
+
+        Bench.sink = acc;
+        return new long[] { ops, now - start, bytes };
+    }
+
+    // bytes allocated so far by the threads alive now; threads that end
+    // during an iteration take their share with them
+    private static long allocatedBytes() {
+        long bytes = 0;
+        for (long b : Bench.THREADS.getThreadAllocatedBytes(Bench.THREADS.getAllThreadIds())) {
+            bytes += Math.max(0, b);
+        }
+        return bytes;
+    }
+
+    private List<long[]> measure(String name, int warmups, int iterations, long millis) {
+        Op op = this.benchmarks.get(name);
+        for (int w = 0; w < warmups; w++) {
+            Bench.iteration(op, millis);
+        }
+
+        List<long[]> results = new ArrayList<>();
+        for (int it = 0; it < iterations; it++) {
+            results.add(Bench.iteration(op, millis));
+        }
+        return results;
+    }
+
+    private static List<long[]> fork(String name, String input, int n, int warmups, int iterations, long millis)
+            throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> cmd = new ArrayList<>();
+        cmd.add(java);
+        cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        cmd.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "Bench", "-child",
+            name, input, "" + n, "" + warmups, "" + iterations, "" + millis));
+
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        List<long[]> results = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (!line.startsWith("ITER ")) {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                results.add(new long[] {
+                    Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3])
+                });
+            }
+        }
+        if (p.waitFor() != 0) {
+            throw new IllegalStateException("fork for " + name + " exited with " + p.exitValue());
+        }
+        return results;
+    }
+
+    private static void report(String name, String input, List<long[]> results, boolean gc) {
+        double[] thrpt = new double[results.size()];
+        long ops = 0, nanos = 0, bytes = 0;
+        for (int i = 0; i < thrpt.length; i++) {
+            long[] r = results.get(i);
+            thrpt[i] = r[0] * 1e6 / r[1];
+            ops += r[0];
+            nanos += r[1];
+            bytes += r[2];
+        }
+
+        double mean = 0;
+        for (double t : thrpt) {
+            mean += t;
+        }
+        mean /= thrpt.length;
+        double var = 0;
+        for (double t : thrpt) {
+            var += (t - mean) * (t - mean);
+        }
+        double err = thrpt.length > 1 ? Math.sqrt(var / (thrpt.length - 1)) : 0;
+
+        String s = String.format("%-16s %-7s %14.3f \u00B1 %10.3f ops/ms %12.3f ns/op",
+            name, input, mean, err, (double) nanos / ops);
+        if (gc) {
+            s += String.format(" %10.3f MB/s %10.3f B/op", bytes * 1e3 / nanos, (double) bytes / ops);
+        }
+        System.out.println(s);
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals("-child")) {
+            Bench b = new Bench(args[2], Integer.parseInt(args[3]));
+            List<long[]> results = b.measure(args[1],
+                Integer.parseInt(args[4]), Integer.parseInt(args[5]), Long.parseLong(args[6]));
+            for (long[] r : results) {
+                System.out.println("ITER " + r[0] + " " + r[1] + " " + r[2]);
+            }
+            return;
+        }
+
+        List<String> inputs = Arrays.asList("random", "all");
+        int n = 10000, forks = 2, warmups = 5, iterations = 5;
+        long millis = 1000;
+        boolean gc = false;
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-input": inputs = Arrays.asList(args[++i]); break;
+                case "-n": n = Integer.parseInt(args[++i]); break;
+                case "-f": forks = Integer.parseInt(args[++i]); break;
+                case "-wi": warmups = Integer.parseInt(args[++i]); break;
+                case "-i": iterations = Integer.parseInt(args[++i]); break;
+                case "-t": millis = Long.parseLong(args[++i]); break;
+                case "-prof": gc = args[++i].equals("gc"); break;
+                default: filter = args[i];
+            }
+        }
+
+        System.out.println(String.format("%-16s %-7s %33s %15s", "Benchmark", "input", "throughput", "avgt")
+            + (gc ? String.format(" %15s %15s", "alloc.rate", "alloc.norm") : ""));
+        for (String input : inputs) {
+            Bench local = new Bench(input, n);
+            for (String name : local.benchmarks.keySet()) {
+                if (!name.matches(".*(" + filter + ").*")) {
+                    continue;
+                }
+
+                List<long[]> results = new ArrayList<>();
+                if (forks == 0) {
+                    results.addAll(local.measure(name, warmups, iterations, millis));
+                } else {
+                    for (int f = 0; f < forks; f++) {
+                        results.addAll(Bench.fork(name, input, n, warmups, iterations, millis));
+                    }
+                }
+                Bench.report(name, input, results, gc);
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Answers position queries over HTTP, for tools that do not embed the
+// engine. One thread per request (virtual threads where the JDK has them).
+//
+// java -cp build AnalysisServer serve [port]
+// java -cp build AnalysisServer load host port [clients] [requests per client] [batch]
+// java -cp build AnalysisServer bench [clients] [requests per client] [batch]
+//
+//   GET  /analyze?p=POS[&p=POS...]  one position gives an object, several an array
+//   POST /analyze                   positions separated by whitespace or commas,
+//                                   gives an array in the same order
+//   GET  /stats                     request and cache counters
+//
+// A position is a packed Board field in decimal or a 9-character string
+// such as "X...O....". The side to move follows from the piece counts; the
+// answer has the winner so far (null while the game is on), the minimax
+// value and the best moves, none once the game is over:
+//   {"position":"XX.OO....","toMove":"X","winner":null,"value":"X","bestMoves":[2]}
+//
+// Answers come from the shared Solver and are cached per symmetry class,
+// in canonical orientation, in an array with a slot for every class (a few
+// KiB, so nothing is ever evicted); a hit only maps the best moves back
+// onto the queried orientation. The server binds to the loopback interface.
+public class AnalysisServer {
+    public static final int DEFAULT_PORT = 3334;
+    public static final int MAX_BATCH = 65536;
+
+    static {
+        // the JDK server writes headers and body separately; with Nagle on,
+        // every keep-alive request waits out the client's delayed ack (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final Solver solver;
+    // by MinimaxTable.classRank, 0 until solved; racing threads store the
+    // same answer
+    private final short[] cache = new short[MinimaxTable.NUM_CLASSES];
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    public AnalysisServer(int port, Solver solver) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        this.requests = Threads.newPerTaskExecutor("AnalysisServer-request");
+        this.server.setExecutor(this.requests);
+        this.server.createContext("/analyze", this::analyze);
+        this.server.createContext("/stats", this::stats);
+        this.solver = solver;
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void close() {
+        this.server.stop(0);
+        this.requests.shutdownNow();
+    }
+
+    public String stats() {
+        long h = this.hits.sum(), m = this.misses.sum();
+        return String.format("queries: %d, positions: %d, cache hits: %d, misses: %d (%.2f%% hits)",
+            this.queries.sum(), this.positions.sum(), h, m, (h + m == 0) ? 0.0 : 100.0 * h / (h + m));
+    }
+
+
+    // a packed field in decimal or a compact string, -1 if it is neither
+    // or not a position that can occur in a game
+    public static int parse(String s) {
+        int field;
+        try {
+            if (!s.isEmpty() && s.chars().allMatch(Character::isDigit)) {
+                field = Integer.parseInt(s);
+                if (!Analyze.isValid(field)) {
+                    return -1;
+                }
+            } else {
+                field = Board.parseCompactString(s);
+            }
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        int lead = Integer.bitCount(Board.xMask(field)) - Integer.bitCount(Board.oMask(field));
+        return (lead == 0 || lead == 1) ? field : -1;
+    }
+
+    // winner | minimax << 2 | best moves << 4, as in Analyze
+    public short analyze(int field) {
+        int canonical = field;
+        int[] best = MinimaxTable.SYMMETRIES[0];
+        int bestRank = MinimaxTable.base3(field);
+        for (int[] sym : MinimaxTable.SYMMETRIES) {
+            int t = MinimaxTable.transform(field, sym);
+            int rank = MinimaxTable.base3(t);
+            if (rank < bestRank) {
+                canonical = t;
+                best = sym;
+                bestRank = rank;
+            }
+        }
+
+        // every answer has a value, so 0 is free to mean not cached
+        int slot = MinimaxTable.classRank(canonical);
+        short result = this.cache[slot];
+        if (result != 0) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+            result = this.solve(canonical);
+            this.cache[slot] = result;
+        }
+
+        // cell i of the query is cell best[i] of the canonical field
+        int moves = 0;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            if ((result & (1 << (4 + best[i]))) != 0) {
+                moves |= 1 << i;
+            }
+        }
+        return (short) ((result & 0xF) | (moves << 4));
+    }
+
+    private short solve(int field) {
+        boolean isX = Integer.bitCount(Board.xMask(field)) == Integer.bitCount(Board.oMask(field));
+        byte winner = Board.checkWin(field);
+        byte minimax = winner;
+        int moves = 0;
+        if (winner == Board.EMPTY) {
+            minimax = this.solver.minimax(field, isX);
+            moves = this.solver.bestMovesMask(field, isX);
+        }
+        return (short) (winner | (minimax << 2) | (moves << 4));
+    }
+
+    private static String name(byte mark) {
+        return (mark == Board.DRAW) ? "\"DRAW\"" : (mark == Board.EMPTY) ? "null" : "\"" + Board.symbol(mark) + "\"";
+    }
+
+    private static void json(StringBuilder sb, int field, short r) {
+        boolean isX = Integer.bitCount(Board.xMask(field)) == Integer.bitCount(Board.oMask(field));
+        sb.append("{\"position\":\"").append(Board.toCompactString(field))
+            .append("\",\"toMove\":\"").append(isX ? 'X' : 'O')
+            .append("\",\"winner\":").append(AnalysisServer.name((byte) (r & Board.MASK)))
+            .append(",\"value\":").append(AnalysisServer.name((byte) ((r >> 2) & Board.MASK)))
+            .append(",\"bestMoves\":[");
+        for (int moves = r >> 4, first = 1; moves != 0; moves &= moves - 1, first = 0) {
+            sb.append(first == 1 ? "" : ",").append(Integer.numberOfTrailingZeros(moves));
+        }
+        sb.append("]}");
+    }
+
+
+    private void analyze(HttpExchange ex) throws IOException {
+        try (ex) {
+            List<String> input = new ArrayList<>();
+            boolean batch;
+            if (ex.getRequestMethod().equals("POST")) {
+                String body = new String(AnalysisServer.readAll(ex.getRequestBody()), StandardCharsets.US_ASCII);
+                for (String s : body.split("[\\s,]+")) {
+                    if (!s.isEmpty()) {
+                        input.add(s);
+                    }
+                }
+                batch = true;
+            } else if (ex.getRequestMethod().equals("GET")) {
+                String query = ex.getRequestURI().getRawQuery();
+                try {
+                    for (String param : (query == null) ? new String[0] : query.split("&")) {
+                        int eq = param.indexOf('=');
+                        if (eq >= 0 && URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8).equals("p")) {
+                            input.add(URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    AnalysisServer.send(ex, 400, "{\"error\":\"bad query string\"}");
+                    return;
+                }
+                batch = input.size() != 1;
+            } else {
+                AnalysisServer.send(ex, 405, "{\"error\":\"GET or POST\"}");
+                return;
+            }
+            if (input.size() > AnalysisServer.MAX_BATCH) {
+                AnalysisServer.send(ex, 413, "{\"error\":\"at most " + AnalysisServer.MAX_BATCH + " positions\"}");
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder(128 * input.size() + 2);
+            sb.append(batch ? "[" : "");
+            for (int i = 0; i < input.size(); i++) {
+                int field = AnalysisServer.parse(input.get(i));
+                if (field < 0) {
+                    AnalysisServer.send(ex, 400, "{\"error\":\"not a position: " + input.get(i).replaceAll("[^\\w.]", "?") + "\"}");
+                    return;
+                }
+                sb.append(i == 0 ? "" : ",");
+                AnalysisServer.json(sb, field, this.analyze(field));
+            }
+            sb.append(batch ? "]" : "");
+            this.queries.increment();
+            this.positions.add(input.size());
+            AnalysisServer.send(ex, 200, sb.toString());
+        }
+    }
+
+    private void stats(HttpExchange ex) throws IOException {
+        try (ex) {
+            AnalysisServer.send(ex, 200, "{\"stats\":\"" + this.stats() + "\"}");
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+
+    // positions from random games, so every one of them can occur
+    private static String[] randomPositions(int n) {
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        String[] positions = new String[n];
+        for (int i = 0; i < n; i++) {
+            int field = 0;
+            int plies = rng.nextInt(Board.THREE_SQ);
+            for (int ply = 0; ply < plies && Board.checkWin(field) == Board.EMPTY; ply++) {
+                int free = Board.legalMoves(field);
+                field = Board.setCell(field, Board.nthMove(free, rng.nextInt(Integer.bitCount(free))),
+                    ply % 2 == 0 ? Board.X : Board.O);
+            }
+            positions[i] = Board.toCompactString(field);
+        }
+        return positions;
+    }
+
+    // sends `requests` queries of `batch` positions, returns the latency of
+    // every request in ns
+    private static long[] client(HttpClient http, URI base, int requests, int batch) throws Exception {
+        String[] positions = AnalysisServer.randomPositions(1024);
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        long[] latencies = new long[requests];
+        for (int r = 0; r < requests; r++) {
+            HttpRequest request;
+            if (batch == 1) {
+                request = HttpRequest.newBuilder(base.resolve("/analyze?p=" + positions[rng.nextInt(positions.length)])).build();
+            } else {
+                StringBuilder body = new StringBuilder(10 * batch);
+                for (int i = 0; i < batch; i++) {
+                    body.append(positions[rng.nextInt(positions.length)]).append('\n');
+                }
+                request = HttpRequest.newBuilder(base.resolve("/analyze"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build();
+            }
+            long start = System.nanoTime();
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            latencies[r] = System.nanoTime() - start;
+            if (response.statusCode() != 200) {
+                throw new IOException("status " + response.statusCode() + ": " + response.body());
+            }
+        }
+        return latencies;
+    }
+
+    public static void load(String host, int port, int clients, int requests, int batch) throws Exception {
+        ExecutorService pool = Threads.newPerTaskExecutor("AnalysisServer-client");
+        HttpClient http = HttpClient.newBuilder().executor(pool).version(HttpClient.Version.HTTP_1_1).build();
+        URI base = URI.create("http://" + host + ":" + port);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            futures.add(pool.submit(() -> AnalysisServer.client(http, base, requests, batch)));
+        }
+        long[] all = new long[clients * requests];
+        int n = 0, failed = 0;
+        for (Future<long[]> f : futures) {
+            try {
+                long[] latencies = f.get();
+                System.arraycopy(latencies, 0, all, n, latencies.length);
+                n += latencies.length;
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        Arrays.sort(all, 0, n);
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("[AnalysisServer] %d clients (%d failed), %d requests of %d positions in %d ms",
+            clients, failed, n, batch, elapsed / 1000000));
+        if (n > 0) {
+            System.out.println(String.format("[AnalysisServer] %.0f requests/s, %.0f positions/s, latency p50 %d us, p99 %d us, max %d us (%s threads)",
+                n / seconds, (double) n * batch / seconds, all[(n - 1) / 2] / 1000, all[(int) Math.ceil(0.99 * n) - 1] / 1000,
+                all[n - 1] / 1000, Threads.hasVirtualThreads() ? "virtual" : "platform"));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = (args.length >= 1) ? args[0] : "serve";
+        if (mode.equals("load")) {
+            int clients = (args.length >= 4) ? Integer.parseInt(args[3]) : 64;
+            int requests = (args.length >= 5) ? Integer.parseInt(args[4]) : 1000;
+            int batch = (args.length >= 6) ? Integer.parseInt(args[5]) : 1;
+            AnalysisServer.load(args[1], Integer.parseInt(args[2]), clients, requests, batch);
+        } else if (mode.equals("bench")) {
+            int clients = (args.length >= 2) ? Integer.parseInt(args[1]) : 64;
+            int requests = (args.length >= 3) ? Integer.parseInt(args[2]) : 1000;
+            int batch = (args.length >= 4) ? Integer.parseInt(args[3]) : 1;
+            Board.precompute();
+            AnalysisServer server = new AnalysisServer(0, Board.solver());
+            server.start();
+            AnalysisServer.load("127.0.0.1", server.getPort(), clients, requests, batch);
+            System.out.println("[AnalysisServer] " + server.stats());
+            server.close();
+        } else {
+            int port = (args.length >= 2) ? Integer.parseInt(args[1]) : AnalysisServer.DEFAULT_PORT;
+            Board.solver().warmUp();
+            AnalysisServer server = new AnalysisServer(port, Board.solver());
+            server.start();
+            System.out.println("[AnalysisServer] listening on port " + server.getPort());
+            Thread.currentThread().join();
+        }
+    }
+}
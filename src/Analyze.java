@@ -0,0 +1,267 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Streams packed positions through the engine.
+//
+// java -cp build Analyze [-csv] [-threads N] [-chunk N] [in|-] [out|-]
+// java -cp build Analyze gen all|N out
+//
+// Input is a sequence of big endian int32 Board fields, from a file (mapped
+// a window at a time) or stdin. Every position gets its winner, its minimax
+// value and its best moves, with the side to move taken from the piece
+// counts. Chunks are analysed in parallel and written in input order; at
+// most 2 chunks per thread are in flight, so memory does not depend on the
+// input size.
+//
+// Binary output is one big endian short per position:
+//   bits 0-1  winner (Board.EMPTY, X, DRAW or O)
+//   bits 2-3  minimax value
+//   bits 4-12 best moves (bit 4 + i = sector i), none once the game is over
+// or INVALID for fields that are not positions.
+public class Analyze {
+    public static final short INVALID = (short) 0xFFFF;
+
+    private static class Chunk {
+        final int[] fields;
+        final short[] results;
+
+        Chunk(int[] fields) {
+            this.fields = fields;
+            this.results = new short[fields.length];
+        }
+    }
+
+    // fills buf from a file mapping or a channel, returns how many ints
+    // were read, 0 at the end
+    private static class Source implements Closeable {
+        private final FileChannel file;
+        private final ReadableByteChannel stream;
+        private final ByteBuffer buf;
+        private long position = 0;
+        private int trailing = 0; // bytes at the end that are not a whole int
+
+        Source(FileChannel file) {
+            this.file = file;
+            this.stream = null;
+            this.buf = null;
+        }
+
+        Source(ReadableByteChannel stream, int chunk) {
+            this.file = null;
+            this.stream = stream;
+            this.buf = ByteBuffer.allocateDirect(chunk * Integer.BYTES);
+        }
+
+        int read(int[] out) throws IOException {
+            if (this.file != null) {
+                long bytes = Math.min((long) out.length * Integer.BYTES, this.file.size() - this.position);
+                if (bytes < Integer.BYTES) {
+                    this.trailing = (int) Math.max(0, bytes);
+                    return 0;
+                }
+                bytes -= bytes % Integer.BYTES;
+                MappedByteBuffer window = this.file.map(FileChannel.MapMode.READ_ONLY, this.position, bytes);
+                int n = (int) (bytes / Integer.BYTES);
+                window.asIntBuffer().get(out, 0, n);
+                this.position += bytes;
+                return n;
+            }
+
+            this.buf.clear();
+            int read;
+            do {
+                read = this.stream.read(this.buf);
+            } while (read >= 0 && this.buf.hasRemaining());
+            this.buf.flip();
+            int n = this.buf.remaining() / Integer.BYTES;
+            this.buf.asIntBuffer().get(out, 0, n);
+            this.trailing += this.buf.remaining() % Integer.BYTES;
+            return n;
+        }
+
+        int trailing() {
+            return this.trailing;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.file != null) {
+                this.file.close();
+            } else {
+                this.stream.close();
+            }
+        }
+    }
+
+
+    public static boolean isValid(int field) {
+        // 18 bits, no cell with the DRAW encoding
+        return (field & ~0x3FFFF) == 0 && ((field >> 1) & ~field & 0x15555) == 0;
+    }
+
+    public static void analyze(Solver solver, Chunk chunk) {
+        byte[] winners = new byte[chunk.fields.length];
+        Board.checkWin(chunk.fields, winners);
+        for (int i = 0; i < chunk.fields.length; i++) {
+            int field = chunk.fields[i];
+            if (!Analyze.isValid(field)) {
+                chunk.results[i] = Analyze.INVALID;
+                continue;
+            }
+
+            boolean isX = Integer.bitCount(Board.xMask(field)) <= Integer.bitCount(Board.oMask(field));
+            byte winner = winners[i];
+            byte minimax = winner;
+            int moves = 0;
+            if (winner == Board.EMPTY) {
+                minimax = solver.minimax(field, isX);
+                moves = solver.bestMovesMask(field, isX);
+            }
+            chunk.results[i] = (short) (winner | (minimax << 2) | (moves << 4));
+        }
+    }
+
+    private static void write(Chunk chunk, DataOutputStream bin, Writer csv) throws IOException {
+        for (int i = 0; i < chunk.fields.length; i++) {
+            short r = chunk.results[i];
+            if (bin != null) {
+                bin.writeShort(r);
+                continue;
+            }
+
+            csv.write(Integer.toString(chunk.fields[i]));
+            if (r == Analyze.INVALID) {
+                csv.write(",invalid,,\n");
+                continue;
+            }
+            csv.write(',');
+            csv.write(Board.symbol((byte) (r & Board.MASK)));
+            csv.write(',');
+            csv.write(Board.symbol((byte) ((r >> 2) & Board.MASK)));
+            csv.write(',');
+            for (int sector = 0; sector < Board.THREE_SQ; sector++) {
+                if ((r & (1 << (4 + sector))) != 0) {
+                    csv.write('0' + sector);
+                }
+            }
+            csv.write('\n');
+        }
+    }
+
+    private static void gen(String what, String out) throws IOException {
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16))) {
+            if (what.equals("all")) {
+                for (Board b : Board.genAll()) {
+                    data.writeInt(b.getField());
+                }
+            } else {
+                for (long n = Long.parseLong(what); n > 0; n--) {
+                    data.writeInt(Board.random().getField());
+                }
+            }
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length >= 3 && args[0].equals("gen")) {
+            Analyze.gen(args[1], args[2]);
+            return;
+        }
+
+        boolean csv = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunk = 1 << 16;
+        String in = "-", out = "-";
+        int files = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-csv": csv = true; break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-chunk": chunk = Integer.parseInt(args[++i]); break;
+                default:
+                    if (files++ == 0) {
+                        in = args[i];
+                    } else {
+                        out = args[i];
+                    }
+            }
+        }
+
+        Solver solver = Board.solver();
+        solver.precompute();
+
+        OutputStream os = new BufferedOutputStream(out.equals("-") ? System.out : new FileOutputStream(out), 1 << 16);
+        DataOutputStream bin = csv ? null : new DataOutputStream(os);
+        Writer text = csv ? new BufferedWriter(new OutputStreamWriter(os), 1 << 16) : null;
+        if (csv) {
+            text.write("field,winner,minimax,best_moves\n");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Chunk>> inflight = new ArrayDeque<>();
+        int[] buf = new int[chunk];
+        long positions = 0;
+        long start = System.nanoTime();
+        int n;
+        // the pool's threads are not daemons, a failed chunk must not keep
+        // the JVM alive
+        try {
+            try (Source source = in.equals("-")
+                    ? new Source(Channels.newChannel(System.in), chunk)
+                    : new Source(FileChannel.open(Paths.get(in), StandardOpenOption.READ))) {
+                while ((n = source.read(buf)) > 0) {
+                    Chunk c = new Chunk(Arrays.copyOf(buf, n));
+                    inflight.add(pool.submit(() -> {
+                        Analyze.analyze(solver, c);
+                        return c;
+                    }));
+                    positions += n;
+                    if (inflight.size() >= 2 * threads) {
+                        Analyze.write(inflight.poll().get(), bin, text);
+                    }
+                }
+                if (source.trailing() != 0) {
+                    System.err.println("[Analyze] ignoring " + source.trailing() + " bytes at the end of " + in
+                        + ": the input is not a whole number of int32 fields");
+                }
+            }
+            while (!inflight.isEmpty()) {
+                Analyze.write(inflight.poll().get(), bin, text);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (csv) {
+            text.flush();
+        }
+        os.flush();
+        if (!out.equals("-")) {
+            os.close();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.err.println("[Analyze] " + positions + " positions on " + threads + " threads in "
+            + elapsed / 1000000 + " ms" + String.format(" (%.0f positions/s)", positions * 1e9 / elapsed));
+    }
+}
@@ -0,0 +1,367 @@
+import java.util.List;
+import java.util.Random;
+
+class Board {
+    public static final byte X = 1, DRAW = 2, O = 3;
+    public static final byte EMPTY = 0, MASK = 3;
+    public static final char[] MARK2SYMBOL = new char[] { ' ', 'X', '-', 'O' };
+    public static final byte[] INT2MARK = new byte[] { EMPTY, X, O };
+    public static final int THREE = 3;
+    public static final int THREE_SQ = THREE * THREE;
+
+    // WAYS TO WIN
+    // 0 1 2
+    // 3 4 5
+    // 6 7 8
+    //
+    // ROWS
+    // 0 +1 = 0 1 2
+    // 3 +1 = 3 4 5
+    // 6 +1 = 6 7 8
+    //
+    // UP DIAGONAL
+    // 2 +2 = 2 4 6
+    //
+    // COLUMNS
+    // 0 +3 = 0 3 6
+    // 1 +3 = 1 4 7
+    // 2 +3 = 2 5 8
+    //
+    // DOWN DIAGONAL
+    // 0 +4 = 0 4 8
+    //
+    // the lines of Lines as X marks, in the order above; checkWin and the
+    // batch checkWin report the first line they find in this order
+    private static int[] winTemplates = new int[] {
+        Board.fromMasks(Lines.TOP_HOR.getMask(), 0),    // row0
+        Board.fromMasks(Lines.MID_HOR.getMask(), 0),    // row1
+        Board.fromMasks(Lines.BOT_HOR.getMask(), 0),    // row2
+        Board.fromMasks(Lines.TR_BL_DIAG.getMask(), 0), // up diag
+        Board.fromMasks(Lines.LEFT_VERT.getMask(), 0),  // col0
+        Board.fromMasks(Lines.MID_VERT.getMask(), 0),   // col1
+        Board.fromMasks(Lines.RIGHT_VERT.getMask(), 0), // col2
+        Board.fromMasks(Lines.TL_BR_DIAG.getMask(), 0), // down diag
+    };
+    private static int drawTemplate = 0b010101010101010101; // every cell
+
+    // for every 9-bit occupancy mask, the index of the first winTemplate it
+    // contains (or NO_LINE), so the batch checkWin agrees with checkWin even
+    // on positions with a line for both sides
+    //
+    // masksLow/masksHigh map the low 10 / high 8 bits of a field to the
+    // occupancy of those cells, packed as xMask | oMask << 9, and winners
+    // maps (first X line, first O line, board full) to the result, so the
+    // batch checkWin has no branches
+    private static final byte NO_LINE = 8;
+    private static final byte[] firstLine = new byte[1 << 9];
+    private static final int[] masksLow = new int[1 << 10];
+    private static final int[] masksHigh = new int[1 << 8];
+    private static final byte[] winners = new byte[1 << 9];
+    static {
+        for (int x = 0; x <= Board.NO_LINE; x++) {
+            for (int o = 0; o <= Board.NO_LINE; o++) {
+                for (int full = 0; full < 2; full++) {
+                    byte winner = (x < o) ? Board.X : (o < x) ? Board.O : (full == 1) ? Board.DRAW : Board.EMPTY;
+                    Board.winners[(x << 5) | (o << 1) | full] = winner;
+                }
+            }
+        }
+        for (int bits = 0; bits < Board.masksLow.length; bits++) {
+            Board.masksLow[bits] = Board.xMask(bits) | Board.oMask(bits) << 9;
+        }
+        for (int bits = 0; bits < Board.masksHigh.length; bits++) {
+            Board.masksHigh[bits] = Board.xMask(bits << 10) | Board.oMask(bits << 10) << 9;
+        }
+
+        for (int mask = 0; mask < Board.firstLine.length; mask++) {
+            Board.firstLine[mask] = Board.NO_LINE;
+            for (int t = Board.winTemplates.length - 1; t >= 0; t--) {
+                int line = Board.xMask(Board.winTemplates[t]);
+                if ((mask & line) == line) {
+                    Board.firstLine[mask] = (byte) t;
+                }
+            }
+        }
+    }
+
+    private static volatile Solver solver = new Solver();
+
+    private int field = 0;
+
+
+    public Board() {
+    }
+
+    public Board(int field) {
+        this.field = field;
+    }
+
+    public Board(TicTacToe game) {
+        this.field = game.getField();
+    }
+
+
+    public static Board fromInt(int x) {
+        Board b = new Board();
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            b.set(i, Board.INT2MARK[x % Board.INT2MARK.length]);
+            x /= Board.INT2MARK.length;
+        }
+        return b;
+    }
+
+    public static Board random() {
+        return Board.fromInt(new Random().nextInt() & Integer.MAX_VALUE);
+    }
+
+    public static Board[] genRandom(int n) {
+        Board[] boards = new Board[n];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = Board.random();
+        }
+        return boards;
+    }
+
+    public static Board[] genAll() {
+        int numBoards = 1;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            numBoards *= Board.INT2MARK.length;
+        }
+
+        Board[] boards = new Board[numBoards];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = Board.fromInt(i);
+        }
+        return boards;
+    }
+
+
+    // the engine shared by all Board instances and CStrat players that do
+    // not bring their own
+    public static Solver solver() {
+        return Board.solver;
+    }
+
+    public static void precompute() {
+        Board.solver.precompute();
+    }
+
+    // swaps in a fresh engine; threads still using the old one keep a
+    // consistent table
+    public static void clear() {
+        Board.solver = new Solver();
+    }
+
+    public static MinimaxTable table() {
+        return Board.solver.table();
+    }
+
+    // STATIC OPERATIONS ON PACKED FIELDS
+    // none of them allocate
+
+    public static byte getCell(int field, int pos) {
+        return (byte)((field >> (2 * pos)) & Board.MASK);
+    }
+
+    public static int setCell(int field, int pos, byte mark) {
+        return (field & ~(Board.MASK << (2 * pos))) | (mark << (2 * pos));
+    }
+
+    // 9-bit mask (bit i = cell i) of the empty cells
+    public static int legalMoves(int field) {
+        return ~(Board.compress(field) | Board.compress(field >> 1)) & 0x1FF;
+    }
+
+    public static int xMask(int field) {
+        return Board.compress(field & ~(field >> 1));
+    }
+
+    public static int oMask(int field) {
+        return Board.compress(field & (field >> 1));
+    }
+
+    public static int fromMasks(int xMask, int oMask) {
+        return Board.spread(xMask) * Board.X | Board.spread(oMask) * Board.O;
+    }
+
+    // the cell of the n-th (from 0) set bit of a move mask
+    public static int nthMove(int moves, int n) {
+        for (; n > 0; n--) {
+            moves &= moves - 1;
+        }
+        return Integer.numberOfTrailingZeros(moves);
+    }
+
+    public static byte minimax(int field, boolean isX) {
+        return Board.solver.minimax(field, isX);
+    }
+
+    // gathers bits 0, 2, 4, ... 16 into bits 0 to 8
+    private static int compress(int bits) {
+        bits &= 0x15555;
+        bits = (bits | (bits >> 1)) & 0x33333333;
+        bits = (bits | (bits >> 2)) & 0x0F0F0F0F;
+        bits = (bits | (bits >> 4)) & 0x00FF00FF;
+        bits = (bits | (bits >> 8)) & 0x0000FFFF;
+        return bits;
+    }
+
+    // inverse of compress
+    private static int spread(int bits) {
+        bits &= 0x1FF;
+        bits = (bits | (bits << 8)) & 0x00FF00FF;
+        bits = (bits | (bits << 4)) & 0x0F0F0F0F;
+        bits = (bits | (bits << 2)) & 0x33333333;
+        bits = (bits | (bits << 1)) & 0x55555555;
+        return bits;
+    }
+
+
+    public static byte better(boolean isX, byte a, byte b) {
+        return (a < b == isX) ? a : b;
+    }
+
+    public static char symbol(byte mark) {
+        return Board.MARK2SYMBOL[mark];
+    }
+
+    // one character per cell, "X", "O" or "." for empty, e.g. "X.O...X.."
+    public static String toCompactString(int field) {
+        char[] cells = new char[Board.THREE_SQ];
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            byte mark = Board.getCell(field, i);
+            cells[i] = (mark == Board.EMPTY) ? '.' : Board.symbol(mark);
+        }
+        return new String(cells);
+    }
+
+    public static int parseCompactString(String s) {
+        if (s.length() != Board.THREE_SQ) {
+            throw new IllegalArgumentException("expected " + Board.THREE_SQ + " cells: " + s);
+        }
+        int field = 0;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            switch (s.charAt(i)) {
+                case 'X': case 'x': field = Board.setCell(field, i, Board.X); break;
+                case 'O': case 'o': field = Board.setCell(field, i, Board.O); break;
+                case '.': case ' ': case '-': case '_': break;
+                default: throw new IllegalArgumentException("bad cell '" + s.charAt(i) + "': " + s);
+            }
+        }
+        return field;
+    }
+
+
+    public void set(int pos, byte mark) {
+        this.field &= ~(Board.MASK << (2 * pos));
+        this.field |= mark << (2 * pos);
+    }
+
+    public void set(int row, int col, byte mark) {
+        this.set(row * Board.THREE + col, mark);
+    }
+
+    public byte get(int pos) {
+        return (byte)((this.field >> (2 * pos)) & Board.MASK);
+    }
+
+    public byte get(int row, int col) {
+        return this.get(row * Board.THREE + col);
+    }
+
+    public int getField() {
+        return this.field;
+    }
+
+    public byte checkWin() {
+        return Board.checkWin(this.field);
+    }
+
+    public static byte checkWin(int field) {
+        for (int template : Board.winTemplates) {
+            int winMask = template * Board.MASK;
+            int xWin = template * Board.X;
+            int oWin = template * Board.O;
+            if ((field & winMask) == xWin) {
+                return Board.X;
+            }
+            if ((field & winMask) == oWin) {
+                return Board.O;
+            }
+        }
+        int drawMask = Board.drawTemplate * (Board.X & Board.O);
+        return ((field & drawMask) == drawMask) ? Board.DRAW : Board.EMPTY;
+    }
+
+    // checkWin for fields[from] to fields[to - 1], results go to the same
+    // indices of out; one table lookup per side instead of the template loop
+    public static void checkWin(int[] fields, int from, int to, byte[] out) {
+        for (int i = from; i < to; i++) {
+            int field = fields[i];
+            int masks = Board.masksLow[field & 0x3FF] | Board.masksHigh[(field >>> 10) & 0xFF];
+            int x = Board.firstLine[masks & 0x1FF];
+            int o = Board.firstLine[masks >>> 9];
+            int full = (((masks | masks >>> 9) & 0x1FF) + 1) >>> 9;
+            out[i] = Board.winners[(x << 5) | (o << 1) | full];
+        }
+    }
+
+    public static void checkWin(int[] fields, byte[] out) {
+        Board.checkWin(fields, 0, fields.length, out);
+    }
+
+    public static boolean hasLine(int field, byte mark) {
+        for (int template : Board.winTemplates) {
+            if ((field & (template * Board.MASK)) == template * mark) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Integer> bestMoves(boolean isX) {
+        return Board.solver.bestMoves(this.field, isX);
+    }
+
+    public byte minimax(boolean isX) {
+        return Board.solver.minimax(this.field, isX);
+    }
+
+    public byte minimaxUncached(boolean isX) {
+        if (Metrics.ENABLED) {
+            Metrics.node();
+        }
+        byte winner = this.checkWin();
+        if (winner != Board.EMPTY) {
+            return winner;
+        }
+
+        byte mark = isX ? Board.X : Board.O;
+        byte best = isX ? Board.O : Board.X;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            if (this.get(i) != Board.EMPTY) {
+                continue;
+            }
+
+            this.set(i, mark);
+            best = Board.better(isX, this.minimaxUncached(!isX), best);
+            this.set(i, Board.EMPTY);
+        }
+
+        return best;
+    }
+
+    public String toString() {
+        String s = "[" + this.field + "]\n";
+
+        for (int row = 0; row < Board.THREE; row++) {
+            for (int col = 0; col < Board.THREE; col++) {
+                s += Board.symbol(this.get(row, col));
+                s += col + 1 == Board.THREE ? "\n" : " \u2502 ";
+            }
+            s += row + 1 == Board.THREE ? "" : "\u2500\u2500\u253C\u2500\u2500\u2500\u253C\u2500\u2500\n";
+        }
+
+        return s;
+    }
+}
@@ -1,301 +1,120 @@
 import java.lang.IllegalStateException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.io.BufferedReader;
 import java.io.Console;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
-
-class Board {
-    public static final byte X = 1, DRAW = 2, O = 3;
-    public static final byte EMPTY = 0, MASK = 3;
-    public static final char[] MARK2SYMBOL = new char[] { ' ', 'X', '-', 'O' };
-    public static final byte[] INT2MARK = new byte[] { EMPTY, X, O };
-    public static final int THREE = 3;
-    public static final int THREE_SQ = THREE * THREE;
-
-    private static final int NUM_BOARDS = 1 << (2 * THREE_SQ + 1);
-    private static final byte NOT_COMPUTED = 0;
-    private static byte[] minimaxLookup = null;
-    private static boolean didPrecompute = false;
-
-    // WAYS TO WIN
-    // 0 1 2
-    // 3 4 5
-    // 6 7 8
-    //
-    // ROWS
-    // 0 +1 = 0 1 2
-    // 3 +1 = 3 4 5
-    // 6 +1 = 6 7 8
-    //
-    // UP DIAGONAL
-    // 2 +2 = 2 4 6
-    //
-    // COLUMNS
-    // 0 +3 = 0 3 6
-    // 1 +3 = 1 4 7
-    // 2 +3 = 2 5 8
-    //
-    // DOWN DIAGONAL
-    // 0 +4 = 0 4 8
-    private static int[] winTemplates = new int[] {
-        // 8 7 6 5 4 3 2 1 0
-        0b000000000000010101, // row0
-        0b000000010101000000, // row1
-        0b010101000000000000, // row2
-        0b000001000100010000, // up diag
-        0b000001000001000001, // col0
-        0b000100000100000100, // col1
-        0b010000010000010000, // col2
-        0b010000000100000001, // down diag
-    };
-    private static int drawTemplate = 0b010101010101010101; // every cell
-
-    private int field = 0;
-
-
-    public Board() {
-        Board.ensureLookup();
-    }
-
-    public Board(int field) {
-        Board.ensureLookup();
-        this.field = field;
-    }
-
-    public Board(TicTacToe game) {
-        Board.ensureLookup();
-
-        for (int x : game.getXPos()) {
-            if (x == -1) continue;
-            this.field |= Board.X << (2 * x);
-        }
-        for (int o : game.getOPos()) {
-            if (o == -1) continue;
-            this.field |= Board.O << (2 * o);
-        }
-    }
-
-
-    public static Board fromInt(int x) {
-        Board b = new Board();
-        for (int i = 0; i < Board.THREE_SQ; i++) {
-            b.set(i, Board.INT2MARK[x % Board.INT2MARK.length]);
-            x /= Board.INT2MARK.length;
-        }
-        return b;
-    }
-
-    public static Board random() {
-        return Board.fromInt(new Random().nextInt() & Integer.MAX_VALUE);
-    }
-
-    public static Board[] genRandom(int n) {
-        Board[] boards = new Board[n];
-        for (int i = 0; i < boards.length; i++) {
-            boards[i] = Board.random();
-        }
-        return boards;
-    }
-
-    public static Board[] genAll() {
-        int numBoards = 1;
-        for (int i = 0; i < Board.THREE_SQ; i++) {
-            numBoards *= Board.INT2MARK.length;
-        }
-
-        Board[] boards = new Board[numBoards];
-        for (int i = 0; i < boards.length; i++) {
-            boards[i] = Board.fromInt(i);
-        }
-        return boards;
-    }
-
-
-    private static void ensureLookup() {
-        if (Board.minimaxLookup != null) {
-            return;
-        }
-
-        Board.minimaxLookup = new byte[Board.NUM_BOARDS];
-        Board.clear();
-    }
-
-    public static void precompute() {
-        if (!Board.didPrecompute) {
-            Board.didPrecompute = true;
-            new Board().minimax(false);
-            new Board().minimax(true);
-        }
-    }
-
-    public static void clear() {
-        Board.didPrecompute = false;
-        Arrays.fill(Board.minimaxLookup, Board.NOT_COMPUTED);
-    }
-
-    private static byte better(boolean isX, byte a, byte b) {
-        return (a < b == isX) ? a : b;
-    }
-
-    public static char symbol(byte mark) {
-        return Board.MARK2SYMBOL[mark];
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CStrat implements Player, PackedPlayer {
+    private Random rng = new Random();
+    private char mark;
+    private Solver solver;
+    private Retrograde retrograde;
+    private CompletableFuture<Retrograde> pending;
+    private final long created = System.nanoTime();
+    private boolean moved = false;
+
+    // prefers the fastest win and the slowest loss. Returns at once: the
+    // shared engines warm up in the background, and until they are ready
+    // moves are solved on demand, only the subtree below the position.
+    public CStrat(char mark) {
+        this(mark, Board.solver(), Retrograde.sharedAsync());
+        this.solver.warmUp();
     }
 
-
-    public void set(int pos, byte mark) {
-        this.field &= ~(Board.MASK << (2 * pos));
-        this.field |= mark << (2 * pos);
+    // uses the given engine as is, without precomputing it; any of the
+    // best moves is played
+    public CStrat(char mark, Solver solver) {
+        this(mark, solver, (Retrograde) null);
     }
 
-    public void set(int row, int col, byte mark) {
-        this.set(row * Board.THREE + col, mark);
+    // takes the fastest win and the slowest loss from the retrograde table
+    // where it knows the position, any of the solver's best moves otherwise
+    public CStrat(char mark, Solver solver, Retrograde retrograde) {
+        this.mark = mark;
+        this.solver = solver;
+        this.retrograde = retrograde;
     }
 
-    public byte get(int pos) {
-        return (byte)((this.field >> (2 * pos)) & Board.MASK);
+    // as above, with the retrograde table once `retrograde` completes
+    public CStrat(char mark, Solver solver, CompletableFuture<Retrograde> retrograde) {
+        this(mark, solver, retrograde.getNow(null));
+        this.pending = (this.retrograde == null) ? retrograde : null;
     }
 
-    public byte get(int row, int col) {
-        return this.get(row * Board.THREE + col);
+    public Move makeMove(TicTacToe game) {
+        return new Move(this.mark, this.makeMove(game.getField(), this.mark == 'X'));
     }
 
-    public byte checkWin() {
-        for (int template : Board.winTemplates) {
-            int winMask = template * Board.MASK;
-            int xWin = template * Board.X;
-            int oWin = template * Board.O;
-            if ((this.field & winMask) == xWin) {
-                return Board.X;
-            }
-            if ((this.field & winMask) == oWin) {
-                return Board.O;
-            }
+    public int makeMove(int field, boolean isX) {
+        Metrics.DecisionEvent event = new Metrics.DecisionEvent();
+        if (!Metrics.ENABLED && !event.isEnabled()) {
+            int moves = this.bestMovesMask(field, isX);
+            return Board.nthMove(moves, this.rng.nextInt(Integer.bitCount(moves)));
         }
-        int drawMask = Board.drawTemplate * (Board.X & Board.O);
-        return ((this.field & drawMask) == drawMask) ? Board.DRAW : Board.EMPTY;
-    }
 
-    public List<Integer> bestMoves(boolean isX) {
-        List<Integer> moves = new ArrayList<>(9);
-        byte bestRet = this.minimax(isX);
-        byte mark = isX ? Board.X : Board.O;
-        for (int i = 0; i < Board.THREE_SQ; i++) {
-            if (this.get(i) != Board.EMPTY) {
-                continue;
-            }
-
-            this.set(i, mark);
-            byte ret = this.minimax(!isX);
-            if (ret == bestRet) {
-                moves.add(i);
+        event.begin();
+        long start = System.nanoTime();
+        int moves = this.bestMovesMask(field, isX);
+        int move = Board.nthMove(moves, this.rng.nextInt(Integer.bitCount(moves)));
+        long end = System.nanoTime();
+        if (Metrics.ENABLED) {
+            Metrics.decision(end - start);
+            if (!this.moved) {
+                this.moved = true;
+                Metrics.firstMove(end - this.created);
             }
-            this.set(i, Board.EMPTY);
         }
-
-        return moves;
-    }
-
-    public byte minimax(boolean isX) {
-        int key = (this.field << 1) | (isX ? 1 : 0);
-        byte minimax = Board.minimaxLookup[key];
-        if (minimax == Board.NOT_COMPUTED) {
-            minimax = this.minimaxRec(isX);
-            Board.minimaxLookup[key] = minimax;
+        if (event.shouldCommit()) {
+            event.field = field;
+            event.isX = isX;
+            event.move = move;
+            event.bestMoves = moves;
+            event.commit();
         }
-        return minimax;
+        return move;
     }
 
-    private byte minimaxRec(boolean isX) {
-        byte winner = this.checkWin();
-        if (winner != Board.EMPTY) {
-            return winner;
+    private int bestMovesMask(int field, boolean isX) {
+        if (this.pending != null && this.pending.isDone()) {
+            // a failed warm-up leaves the solver to answer
+            this.retrograde = this.pending.isCompletedExceptionally() ? null : this.pending.join();
+            this.pending = null;
         }
-
-        byte mark = isX ? Board.X : Board.O;
-        byte best = isX ? Board.O : Board.X;
-        for (int i = 0; i < Board.THREE_SQ; i++) {
-            if (this.get(i) != Board.EMPTY) {
-                continue;
+        if (this.retrograde != null && Retrograde.isXToMove(field) == isX) {
+            int moves = this.retrograde.bestMovesMask(field);
+            if (moves != 0) {
+                return moves;
             }
-
-            this.set(i, mark);
-            best = Board.better(isX, this.minimax(!isX), best);
-            this.set(i, Board.EMPTY);
-        }
-
-        return best;
-    }
-
-    public byte minimaxUncached(boolean isX) {
-        byte winner = this.checkWin();
-        if (winner != Board.EMPTY) {
-            return winner;
         }
-
-        byte mark = isX ? Board.X : Board.O;
-        byte best = isX ? Board.O : Board.X;
-        for (int i = 0; i < Board.THREE_SQ; i++) {
-            if (this.get(i) != Board.EMPTY) {
-                continue;
-            }
-
-            this.set(i, mark);
-            best = Board.better(isX, this.minimaxUncached(!isX), best);
-            this.set(i, Board.EMPTY);
-        }
-
-        return best;
-    }
-
-    public String toString() {
-        String s = "[" + this.field + "]\n";
-
-        for (int row = 0; row < Board.THREE; row++) {
-            for (int col = 0; col < Board.THREE; col++) {
-                s += Board.symbol(this.get(row, col));
-                s += col + 1 == Board.THREE ? "\n" : " \u2502 ";
-            }
-            s += row + 1 == Board.THREE ? "" : "\u2500\u2500\u253C\u2500\u2500\u2500\u253C\u2500\u2500\n";
-        }
-
-        return s;
-    }
-}
-
-public class CStrat implements Player {
-    private Random rng = new Random();
-    private char mark;
-
-    public CStrat(char mark) {
-        this.mark = mark;
-        System.out.println("[CStrat] Starting precompute...");
-        long start = System.nanoTime();
-        Board.precompute();
-        long elapsed = System.nanoTime() - start;
-        System.out.println("[CStrat] done - took " + (float)elapsed / 1000.0 + " us");
-    }
-
-    public Move makeMove(TicTacToe game) {
-        List<Integer> moves = new Board(game).bestMoves(this.mark == 'X');
-        int i = (this.rng.nextInt() & Integer.MAX_VALUE) % moves.size();
-        return new Move(this.mark, moves.get(i));
+        return this.solver.bestMovesMask(field, isX);
     }
 
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         // javac -Xdiags:verbose -d build src/* && java -cp build CStrat
-        if (args.length >= 1 && args[0].equals("perf")) {
-            Board[] boards;
-            if (args.length >= 2 && args[1].equals("full")) {
-                boards = Board.genAll();
-            } else {
-                int n = (args.length >= 2) ? Integer.parseInt(args[1]) : 10000;
-                boards = Board.genRandom(n);
-            }
-            perf(boards);
+        // benchmarks live in bench/, see Bench
+        if (args.length >= 1 && args[0].equals("ttfm")) {
+            int runs = (args.length >= 2) ? Integer.parseInt(args[1]) : 5;
+            CStrat.timeToFirstMove(runs);
+        } else if (args.length >= 2 && args[0].equals("ttfm-child")) {
+            CStrat.firstMoveChild(args[1].equals("async"));
+        } else if (args.length >= 1 && args[0].equals("stress")) {
+            int threads = (args.length >= 2) ? Integer.parseInt(args[1]) : 2 * Runtime.getRuntime().availableProcessors();
+            int rounds = (args.length >= 3) ? Integer.parseInt(args[2]) : 100;
+            System.exit(stress(threads, rounds) ? 0 : 1);
         } else if (args.length >= 1 && args[0].equals("test")) {
             Console c = System.console();
             for (;;) {
@@ -319,45 +138,121 @@ public class CStrat implements Player {
         }
     }
 
-    public static void perf(Board[] boards) {
-        long start, elapsed;
-
-        // test checkWin
-        start = System.currentTimeMillis();
-        for (int i = 0; i < boards.length; i++) {
-            boards[i].checkWin();
+    // Time from a fresh JVM's first engine use to its first move, blocking on
+    // the precompute as CStrat used to, and with the background warm-up.
+    // Every run forks a child JVM so that nothing is warm yet.
+    public static void timeToFirstMove(int runs) throws IOException, InterruptedException {
+        for (String mode : new String[] { "blocking", "async" }) {
+            long firstMove = 0, ready = 0;
+            for (int r = 0; r < runs; r++) {
+                String java = ProcessHandle.current().info().command().orElse("java");
+                List<String> cmd = new ArrayList<>();
+                cmd.add(java);
+                cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                cmd.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "CStrat", "ttfm-child", mode));
+
+                Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        String[] parts = line.split(" ");
+                        if (parts[0].equals("TTFM")) {
+                            firstMove += Long.parseLong(parts[1]);
+                            ready += Long.parseLong(parts[2]);
+                        }
+                    }
+                }
+                if (p.waitFor() != 0) {
+                    throw new IllegalStateException("ttfm child exited with " + p.exitValue());
+                }
+            }
+            System.out.println(String.format("[CStrat] %-8s first move after %6d us, engines ready after %6d us (mean of %d)",
+                mode, firstMove / runs / 1000, ready / runs / 1000, runs));
         }
-        elapsed = System.currentTimeMillis() - start;
-        System.out.println("checkWin: " + elapsed + " ms");
+    }
 
-        // test minimaxUncached
-        Board.clear();
-        start = System.currentTimeMillis();
-        for (int i = 0; i < boards.length; i++) {
-            boards[i].minimaxUncached(true);
-            boards[i].minimaxUncached(false);
+    private static void firstMoveChild(boolean async) {
+        long start = System.nanoTime();
+        CStrat strat;
+        if (async) {
+            strat = new CStrat('X');
+        } else {
+            Board.precompute();
+            strat = new CStrat('X', Board.solver(), Retrograde.shared());
         }
-        elapsed = System.currentTimeMillis() - start;
-        System.out.println("minimaxUncached: " + elapsed + " ms");
+        strat.makeMove(0, true);
+        long firstMove = System.nanoTime() - start;
+        Board.solver().warmUp().join();
+        Retrograde.sharedAsync().join();
+        System.out.println("TTFM " + firstMove + " " + (System.nanoTime() - start));
+    }
 
-        // test minimax
-        Board.clear();
-        start = System.currentTimeMillis();
-        for (int i = 0; i < boards.length; i++) {
-            boards[i].minimax(true);
-            boards[i].minimax(false);
-        }
-        elapsed = System.currentTimeMillis() - start;
-        System.out.println("minimax: " + elapsed + " ms");
+    // Every round, `threads` threads play games against one cold, shared
+    // engine while another thread runs its parallel solve, and every move
+    // is checked against a single-threaded reference solve.
+    public static boolean stress(int threads, int rounds) throws InterruptedException {
+        final int gamesPerRound = 200;
+        Solver reference = new Solver();
+        reference.minimax(0, true);
+        reference.minimax(0, false);
+
+        AtomicLong moves = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            Solver shared = new Solver();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                shared.solve(ForkJoinPool.commonPool());
+                return null;
+            });
+            for (int t = 0; t < threads; t++) {
+                tasks.add(() -> {
+                    CStrat[] players = new CStrat[] { new CStrat('X', shared), new CStrat('O', shared) };
+                    for (int g = 0; g < gamesPerRound; g++) {
+                        Board b = new Board();
+                        TicTacToe game = new TicTacToe();
+                        for (int ply = 0; b.checkWin() == Board.EMPTY; ply++) {
+                            boolean isX = ply % 2 == 0;
+                            int sector = players[ply % 2].makeMove(game).getSector();
+                            byte mark = isX ? Board.X : Board.O;
+                            Board next = new Board(b.getField());
+                            next.set(sector, mark);
+                            if (b.get(sector) != Board.EMPTY
+                                    || reference.minimax(next.getField(), !isX) != reference.minimax(b.getField(), isX)) {
+                                errors.incrementAndGet();
+                            }
+                            b = next;
+                            game.play(new Move(isX ? 'X' : 'O', sector));
+                            moves.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    errors.incrementAndGet();
+                }
+            }
 
-        // test minimax
-        Board.precompute();
-        start = System.currentTimeMillis();
-        for (int i = 0; i < boards.length; i++) {
-            boards[i].minimax(true);
-            boards[i].minimax(false);
+            // the parallel solve has filled in exactly what the reference has
+            for (int i = 0; i < MinimaxTable.NUM_WORDS; i++) {
+                if (shared.table().word(i) != reference.table().word(i)) {
+                    errors.incrementAndGet();
+                    break;
+                }
+            }
         }
-        elapsed = System.currentTimeMillis() - start;
-        System.out.println("minimax (precomputed): " + elapsed + " ms");
+        pool.shutdown();
+
+        long elapsed = System.nanoTime() - start;
+        System.out.println("[CStrat] stress: " + threads + " threads, " + rounds + " rounds, "
+            + moves.get() + " moves in " + elapsed / 1000000 + " ms, " + errors.get() + " errors");
+        return errors.get() == 0;
     }
 }
@@ -0,0 +1,120 @@
+// Plays games between two Players without any console I/O.
+//
+// A player that fails to make a viable move MAX_TRIES times in a row (or
+// throws) forfeits the game instead of ending the JVM.
+public class GameEngine {
+    public static final int MAX_TRIES = 5;
+
+    private final Player x;
+    private final Player o;
+
+
+    public GameEngine(Player x, Player o) {
+        this.x = x;
+        this.o = o;
+    }
+
+    public GameResult play() {
+        TicTacToe game = new TicTacToe();
+        int[] moves = new int[Board.THREE_SQ];
+        int plies = 0;
+
+        for (;;) {
+            if (game.isOver()) {
+                this.x.ponder(game);
+                this.o.ponder(game);
+                return new GameResult(game.getWinner(), plies, moves, false);
+            }
+
+            boolean isX = plies % 2 == 0;
+            Player player = isX ? this.x : this.o;
+            char mark = isX ? 'X' : 'O';
+            Move move = null;
+            for (int tries = 0; tries < GameEngine.MAX_TRIES; tries++) {
+                move = GameEngine.ask(player, game);
+                if (move != null && move.getMark() == mark && game.play(move)) {
+                    break;
+                }
+                move = null;
+            }
+            if (move == null) {
+                this.x.ponder(game);
+                this.o.ponder(game);
+                return new GameResult(isX ? Board.O : Board.X, plies, moves, true);
+            }
+
+            moves[plies++] = move.getSector();
+            game.setCounter(plies);
+            player.ponder(game);
+        }
+    }
+
+    // Plays a game between two PackedPlayers without allocating. The sectors
+    // played go to `moves` (at least 9 long), the result is packed, see
+    // winner(), plies() and isForfeit().
+    public static int play(PackedPlayer x, PackedPlayer o, int[] moves) {
+        int field = 0;
+        int plies = 0;
+
+        for (;;) {
+            byte winner = Board.checkWin(field);
+            if (winner != Board.EMPTY) {
+                x.ponder(PackedPlayer.GAME_OVER, true);
+                o.ponder(PackedPlayer.GAME_OVER, false);
+                return GameEngine.result(winner, plies, false);
+            }
+
+            boolean isX = plies % 2 == 0;
+            PackedPlayer player = isX ? x : o;
+            int sector = -1;
+            for (int tries = 0; tries < GameEngine.MAX_TRIES; tries++) {
+                sector = GameEngine.ask(player, field, isX);
+                if (sector >= 0 && sector < Board.THREE_SQ && (Board.legalMoves(field) & (1 << sector)) != 0) {
+                    break;
+                }
+                sector = -1;
+            }
+            if (sector < 0) {
+                x.ponder(PackedPlayer.GAME_OVER, true);
+                o.ponder(PackedPlayer.GAME_OVER, false);
+                return GameEngine.result(isX ? Board.O : Board.X, plies, true);
+            }
+
+            field = Board.setCell(field, sector, isX ? Board.X : Board.O);
+            moves[plies++] = sector;
+            player.ponder(field, isX);
+        }
+    }
+
+    private static int result(byte winner, int plies, boolean forfeit) {
+        return winner | (plies << 2) | (forfeit ? 1 << 6 : 0);
+    }
+
+    public static byte winner(int result) {
+        return (byte) (result & Board.MASK);
+    }
+
+    public static int plies(int result) {
+        return (result >> 2) & 0xF;
+    }
+
+    public static boolean isForfeit(int result) {
+        return (result & (1 << 6)) != 0;
+    }
+
+    private static int ask(PackedPlayer player, int field, boolean isX) {
+        try {
+            return player.makeMove(field, isX);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static Move ask(Player player, TicTacToe game) {
+        try {
+            return player.makeMove(game);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
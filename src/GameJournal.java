@@ -0,0 +1,385 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Append-only journal of finished games in a memory mapped file.
+//
+// java -cp build GameJournal replay file...                 blunder report
+//                                                            (64 MB regions in parallel)
+// java -cp build GameJournal gen file [games] [x] [o]        appends games
+//
+// Every game is one RECORD_BYTES record, two big endian longs:
+//   long seed     caller supplied, identifies the game
+//   long game     bits  0-35  the sectors played, 4 bits per ply, first in the low bits
+//                 bits 36-39  plies
+//                 bits 40-41  winner (Board.X, O or DRAW)
+//                 bit     42  forfeit
+//                 bits 48-55  X player, an index into PLAYERS
+//                 bits 56-63  O player
+// after a header of
+//   int MAGIC, int VERSION, int RECORD_BYTES, int unused, long records
+//
+// Records are written into the mapping and fsynced in batches, every
+// `syncEvery` records or `syncMillis`, whichever comes first; a daemon
+// thread syncs a batch that is still waiting when no append comes. The record
+// count in the header is only updated after the records it covers are on
+// disk, so a crash loses at most the last batch and never leaves a torn
+// record behind the count.
+//
+// With -Dttt.journal=<file>, TicTacToe.gameloop and GameServer record all
+// their games into global().
+public class GameJournal implements Closeable {
+    public static final int MAGIC = 0x5454544A; // "TTTJ"
+    public static final int VERSION = 1;
+    public static final int RECORD_BYTES = 2 * Long.BYTES;
+    public static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    public static final String[] PLAYERS = new String[] {
+        "other", "console", "cstrat", "jstrat", "mcts", "mnk", "random", "remote"
+    };
+    private static final int COUNT_OFFSET = 4 * Integer.BYTES;
+    private static final long REGION = 64L << 20; // bytes mapped at a time
+
+    private static GameJournal global;
+    private static boolean globalOpened = false;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int syncEvery;
+    private final long syncNanos;
+    private final ScheduledExecutorService flusher;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long count;
+    private long synced;
+    private long lastSync;
+
+
+    public GameJournal(Path path, int syncEvery, long syncMillis) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.syncEvery = syncEvery;
+        this.syncNanos = syncMillis * 1000000L;
+        boolean fresh = this.channel.size() == 0;
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, GameJournal.HEADER_BYTES);
+        if (fresh) {
+            this.header.putInt(0, GameJournal.MAGIC);
+            this.header.putInt(4, GameJournal.VERSION);
+            this.header.putInt(8, GameJournal.RECORD_BYTES);
+            this.header.putLong(GameJournal.COUNT_OFFSET, 0);
+            this.header.force();
+        } else {
+            GameJournal.checkHeader(this.header, path);
+        }
+        this.count = this.header.getLong(GameJournal.COUNT_OFFSET);
+        this.synced = this.count;
+        this.lastSync = System.nanoTime();
+        this.map(GameJournal.HEADER_BYTES + this.count * GameJournal.RECORD_BYTES);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "GameJournal-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        if (syncMillis > 0) {
+            this.flusher.scheduleWithFixedDelay(this::syncIfDue, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public GameJournal(Path path) throws IOException {
+        this(path, 1024, 1000);
+    }
+
+    // the journal named by -Dttt.journal, or null; closed on exit
+    public static synchronized GameJournal global() {
+        if (!GameJournal.globalOpened) {
+            GameJournal.globalOpened = true;
+            String path = System.getProperty("ttt.journal");
+            if (path != null) {
+                try {
+                    GameJournal journal = new GameJournal(Paths.get(path));
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        try {
+                            journal.close();
+                        } catch (IOException e) {
+                            System.err.println("[GameJournal] close failed: " + e.getMessage());
+                        }
+                    }));
+                    GameJournal.global = journal;
+                } catch (IOException e) {
+                    System.err.println("[GameJournal] cannot open " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        return GameJournal.global;
+    }
+
+    private static void checkHeader(ByteBuffer header, Path path) throws IOException {
+        if (header.getInt(0) != GameJournal.MAGIC || header.getInt(4) != GameJournal.VERSION
+            || header.getInt(8) != GameJournal.RECORD_BYTES) {
+            throw new IOException(path + " is not a version " + GameJournal.VERSION + " game journal");
+        }
+    }
+
+    public static int playerId(Object player) {
+        String name = (player instanceof ConsolePlayer) ? "console"
+            : (player instanceof CStrat) ? "cstrat"
+            : (player instanceof JStrat) ? "jstrat"
+            : (player instanceof MctsStrat) ? "mcts"
+            : (player instanceof MnkStrat) ? "mnk"
+            : (player instanceof RandomPlayer) ? "random"
+            : (player instanceof RemotePlayer) ? "remote"
+            : "other";
+        return GameJournal.playerId(name);
+    }
+
+    public static int playerId(String name) {
+        for (int i = 0; i < GameJournal.PLAYERS.length; i++) {
+            if (GameJournal.PLAYERS[i].equals(name)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // moves: 4 bits per ply as in the record
+    public static long pack(int xPlayer, int oPlayer, long moves, int plies, byte winner, boolean forfeit) {
+        return (moves & 0xFFFFFFFFFL) | ((long) plies << 36) | ((long) winner << 40) | (forfeit ? 1L << 42 : 0)
+            | ((long) xPlayer << 48) | ((long) oPlayer << 56);
+    }
+
+    public static long pack(int xPlayer, int oPlayer, GameResult result) {
+        long moves = 0;
+        for (int i = 0; i < result.getPlies(); i++) {
+            moves |= (long) result.getMoves()[i] << (4 * i);
+        }
+        return GameJournal.pack(xPlayer, oPlayer, moves, result.getPlies(), result.getWinner(), result.isForfeit());
+    }
+
+
+    private void map(long position) throws IOException {
+        if (this.region != null) {
+            this.region.force();
+        }
+        this.regionStart = position;
+        this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, position, GameJournal.REGION);
+    }
+
+    public synchronized void append(long seed, long game) throws IOException {
+        long position = GameJournal.HEADER_BYTES + this.count * GameJournal.RECORD_BYTES;
+        if (position + GameJournal.RECORD_BYTES > this.regionStart + GameJournal.REGION) {
+            this.map(position);
+        }
+        int offset = (int) (position - this.regionStart);
+        this.region.putLong(offset, seed);
+        this.region.putLong(offset + Long.BYTES, game);
+        this.count++;
+
+        if (this.count - this.synced >= this.syncEvery || System.nanoTime() - this.lastSync > this.syncNanos) {
+            this.sync();
+        }
+    }
+
+    public synchronized void sync() {
+        if (this.count == this.synced) {
+            return;
+        }
+        this.region.force();
+        this.header.putLong(GameJournal.COUNT_OFFSET, this.count);
+        this.header.force();
+        this.synced = this.count;
+        this.lastSync = System.nanoTime();
+    }
+
+    // on the flusher thread, for the last batch before appends stop
+    private synchronized void syncIfDue() {
+        if (!this.channel.isOpen() || System.nanoTime() - this.lastSync < this.syncNanos) {
+            return;
+        }
+        try {
+            this.sync();
+        } catch (UncheckedIOException e) {
+            System.err.println("[GameJournal] sync failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized long size() {
+        return this.count;
+    }
+
+    // syncs and cuts the file to the records
+    public synchronized void close() throws IOException {
+        if (!this.channel.isOpen()) {
+            return;
+        }
+        this.flusher.shutdownNow();
+        this.sync();
+        this.channel.truncate(GameJournal.HEADER_BYTES + this.count * GameJournal.RECORD_BYTES);
+        this.channel.close();
+    }
+
+
+    // per player counts of the replay
+    private static class Stats {
+        long games, wins, draws, losses, forfeits, moves, blunders;
+
+        void add(Stats s) {
+            this.games += s.games;
+            this.wins += s.wins;
+            this.draws += s.draws;
+            this.losses += s.losses;
+            this.forfeits += s.forfeits;
+            this.moves += s.moves;
+            this.blunders += s.blunders;
+        }
+    }
+
+    private static Stats[] newStats() {
+        Stats[] stats = new Stats[GameJournal.PLAYERS.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new Stats();
+        }
+        return stats;
+    }
+
+    // scans the journal one mapped region per task, adds the counts to
+    // `stats` and returns the number of records
+    private static long replay(Path path, Stats[] stats, ExecutorService pool) throws Exception {
+        Solver solver = Board.solver();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, GameJournal.HEADER_BYTES);
+            GameJournal.checkHeader(header, path);
+            long records = header.getLong(GameJournal.COUNT_OFFSET);
+
+            long perRegion = GameJournal.REGION / GameJournal.RECORD_BYTES;
+            List<Future<Stats[]>> regions = new ArrayList<>();
+            for (long from = 0; from < records; from += perRegion) {
+                long n = Math.min(perRegion, records - from);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                    GameJournal.HEADER_BYTES + from * GameJournal.RECORD_BYTES, n * GameJournal.RECORD_BYTES);
+                regions.add(pool.submit(() -> {
+                    Stats[] local = GameJournal.newStats();
+                    for (int r = 0; r < n; r++) {
+                        GameJournal.replay(region.getLong(r * GameJournal.RECORD_BYTES + Long.BYTES), solver, local);
+                    }
+                    return local;
+                }));
+            }
+            for (Future<Stats[]> f : regions) {
+                Stats[] local = f.get();
+                for (int i = 0; i < stats.length; i++) {
+                    stats[i].add(local[i]);
+                }
+            }
+            return records;
+        }
+    }
+
+    // re-applies the moves, a move is a blunder if it is not one of the
+    // best moves, i.e. it gives away a win or a draw. Both seats count for
+    // a player that plays itself.
+    private static void replay(long game, Solver solver, Stats[] stats) {
+        int plies = (int) ((game >>> 36) & 0xF);
+        byte winner = (byte) ((game >>> 40) & Board.MASK);
+        boolean forfeit = ((game >>> 42) & 1) != 0;
+        Stats x = stats[(int) ((game >>> 48) & 0xFF) % stats.length];
+        Stats o = stats[(int) ((game >>> 56) & 0xFF) % stats.length];
+
+        int field = 0;
+        for (int ply = 0; ply < plies; ply++) {
+            boolean isX = ply % 2 == 0;
+            int sector = (int) ((game >>> (4 * ply)) & 0xF);
+            Stats player = isX ? x : o;
+            player.moves++;
+            if ((solver.bestMovesMask(field, isX) & (1 << sector)) == 0) {
+                player.blunders++;
+            }
+            field = Board.setCell(field, sector, isX ? Board.X : Board.O);
+        }
+
+        x.games++;
+        o.games++;
+        if (winner == Board.DRAW) {
+            x.draws++;
+            o.draws++;
+        } else {
+            Stats won = (winner == Board.X) ? x : o;
+            Stats lost = (winner == Board.X) ? o : x;
+            won.wins++;
+            lost.losses++;
+            if (forfeit) {
+                lost.forfeits++;
+            }
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("gen")) {
+            long games = (args.length >= 3) ? Long.parseLong(args[2]) : 1000000;
+            String xName = (args.length >= 4) ? args[3] : "cstrat";
+            String oName = (args.length >= 5) ? args[4] : "random";
+            Function<Character, Player> xFactory = Simulation.factory(xName);
+            Function<Character, Player> oFactory = Simulation.factory(oName);
+            PackedPlayer x = PackedPlayer.of(xFactory.apply('X'));
+            PackedPlayer o = PackedPlayer.of(oFactory.apply('O'));
+            int xId = GameJournal.playerId(xName), oId = GameJournal.playerId(oName);
+
+            int[] moves = new int[Board.THREE_SQ];
+            long start = System.nanoTime();
+            try (GameJournal journal = new GameJournal(Paths.get(args[1]))) {
+                for (long g = 0; g < games; g++) {
+                    int result = GameEngine.play(x, o, moves);
+                    int plies = GameEngine.plies(result);
+                    long packed = 0;
+                    for (int i = 0; i < plies; i++) {
+                        packed |= (long) moves[i] << (4 * i);
+                    }
+                    journal.append(g, GameJournal.pack(xId, oId, packed, plies, GameEngine.winner(result),
+                        GameEngine.isForfeit(result)));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.err.println(String.format("[GameJournal] appended %d games in %d ms (%.0f games/s)",
+                games, elapsed / 1000000, games * 1e9 / elapsed));
+        } else if (args.length >= 2 && args[0].equals("replay")) {
+            Board.precompute();
+            Stats[] stats = GameJournal.newStats();
+            ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            long records = 0;
+            long start = System.nanoTime();
+            for (int f = 1; f < args.length; f++) {
+                records += GameJournal.replay(Paths.get(args[f]), stats, pool);
+            }
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+
+            System.out.println("player,games,wins,draws,losses,forfeits,moves,blunders,blunder_rate");
+            for (int i = 0; i < stats.length; i++) {
+                Stats s = stats[i];
+                if (s.games > 0) {
+                    System.out.println(String.format("%s,%d,%d,%d,%d,%d,%d,%d,%.4f", GameJournal.PLAYERS[i], s.games,
+                        s.wins, s.draws, s.losses, s.forfeits, s.moves, s.blunders, (double) s.blunders / s.moves));
+                }
+            }
+            System.err.println(String.format("[GameJournal] replayed %d games in %d ms (%.0f games/s, %.0f MB/s)",
+                records, elapsed / 1000000, records * 1e9 / elapsed,
+                records * GameJournal.RECORD_BYTES * 1e3 / elapsed));
+        } else {
+            System.err.println("usage: GameJournal replay file... | GameJournal gen file [games] [x] [o]");
+            System.exit(2);
+        }
+    }
+}
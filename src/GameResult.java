@@ -0,0 +1,42 @@
+// Outcome of one game played by GameEngine.
+public class GameResult {
+    private final byte winner;
+    private final int plies;
+    private final int[] moves;
+    private final boolean forfeit;
+
+    public GameResult(byte winner, int plies, int[] moves, boolean forfeit) {
+        this.winner = winner;
+        this.plies = plies;
+        this.moves = moves;
+        this.forfeit = forfeit;
+    }
+
+    // Board.X, Board.O or Board.DRAW
+    public byte getWinner() {
+        return this.winner;
+    }
+
+    public int getPlies() {
+        return this.plies;
+    }
+
+    // the sectors played, X first
+    public int[] getMoves() {
+        return this.moves;
+    }
+
+    // whether the loser ran out of tries to make a viable move
+    public boolean isForfeit() {
+        return this.forfeit;
+    }
+
+    public String toString() {
+        String s = this.winner == Board.DRAW ? "Draw" : "Player " + Board.symbol(this.winner) + " won";
+        s += " in " + this.plies + " rounds" + (this.forfeit ? " (forfeit)" : "") + ":";
+        for (int i = 0; i < this.plies; i++) {
+            s += " " + this.moves[i];
+        }
+        return s;
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Hosts TicTacToe games over TCP, one thread per connection (virtual
+// threads where the JDK has them).
+//
+// java -cp build GameServer serve [port] [move timeout ms]
+// java -cp build GameServer load host port [clients] [games per client]
+// java -cp build GameServer bench [clients] [games per client]
+//
+// Line based protocol, server lines are upper case:
+//   S: HELLO tictactoe
+//   C: PLAY <X|O> <cstrat|jstrat|mcts|mnk|random> the side to play and the opponent
+//   S: BOARD <cells>                              e.g. "X...O...." whenever it is
+//   S: TURN                                       the client's turn (again after
+//   C: MOVE <sector>                              a move that was not viable)
+//   S: BOARD <cells>
+//   S: RESULT <X|O|DRAW> [forfeit]                after every game
+//   C: PLAY ... or QUIT
+// A client that does not answer TURN within the move timeout forfeits, idle
+// connections are closed after the same timeout. The server binds to the
+// loopback interface. With -Dttt.metrics=true, Metrics is exposed over JMX.
+public class GameServer {
+    public static final int DEFAULT_PORT = 3333;
+    public static final int DEFAULT_MOVE_TIMEOUT = 10000;
+
+    private final ServerSocket server;
+    private final ExecutorService sessions;
+    private final int moveTimeoutMillis;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+
+
+    public GameServer(int port, int moveTimeoutMillis) throws IOException {
+        this.server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+        this.sessions = Threads.newPerTaskExecutor("GameServer-session");
+        this.moveTimeoutMillis = moveTimeoutMillis;
+    }
+
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(() -> {
+            while (!this.server.isClosed()) {
+                try {
+                    Socket socket = this.server.accept();
+                    this.sessions.submit(() -> this.session(socket));
+                } catch (IOException e) {
+                    if (!this.server.isClosed()) {
+                        System.err.println("[GameServer] accept failed: " + e.getMessage());
+                    }
+                }
+            }
+        }, "GameServer-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void close() throws IOException {
+        this.server.close();
+        this.sessions.shutdownNow();
+    }
+
+    public String stats() {
+        return "games: " + this.games.sum() + ", moves: " + this.moves.sum() + ", peak sessions: " + this.peak.get();
+    }
+
+    private void session(Socket socket) {
+        int now = this.active.incrementAndGet();
+        this.peak.accumulateAndGet(now, Math::max);
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+            s.setSoTimeout(this.moveTimeoutMillis);
+            s.setTcpNoDelay(true);
+            out.write("HELLO tictactoe\n");
+            out.flush();
+
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("QUIT")) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length != 3 || !parts[0].equals("PLAY") || !(parts[1].equals("X") || parts[1].equals("O"))) {
+                    out.write("ERROR expected PLAY <X|O> <opponent>\n");
+                    out.flush();
+                    continue;
+                }
+
+                Function<Character, Player> opponent;
+                try {
+                    opponent = Simulation.factory(parts[2]);
+                } catch (IllegalArgumentException e) {
+                    out.write("ERROR " + e.getMessage() + "\n");
+                    out.flush();
+                    continue;
+                }
+
+                boolean clientIsX = parts[1].equals("X");
+                RemotePlayer remote = new RemotePlayer(clientIsX ? 'X' : 'O', in, out);
+                GameEngine engine = clientIsX
+                    ? new GameEngine(remote, opponent.apply('O'))
+                    : new GameEngine(opponent.apply('X'), remote);
+                GameResult result = engine.play();
+                GameJournal journal = GameJournal.global();
+                if (journal != null) {
+                    // a journal failure is the server's problem, not a client
+                    // that went away: report it and keep the session
+                    try {
+                        journal.append(System.nanoTime(), clientIsX
+                            ? GameJournal.pack(GameJournal.playerId("remote"), GameJournal.playerId(parts[2]), result)
+                            : GameJournal.pack(GameJournal.playerId(parts[2]), GameJournal.playerId("remote"), result));
+                    } catch (IOException | UncheckedIOException e) {
+                        System.err.println("[GameServer] could not journal the game: " + e.getMessage());
+                    }
+                }
+                this.games.increment();
+                this.moves.add(result.getPlies());
+
+                int field = 0;
+                for (int i = 0; i < result.getPlies(); i++) {
+                    field = Board.setCell(field, result.getMoves()[i], i % 2 == 0 ? Board.X : Board.O);
+                }
+                out.write("BOARD " + Board.toCompactString(field) + "\n");
+                out.write("RESULT " + (result.getWinner() == Board.DRAW ? "DRAW" : "" + Board.symbol(result.getWinner()))
+                    + (result.isForfeit() ? " forfeit" : "") + "\n");
+                out.flush();
+                if (remote.isGone()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            this.active.decrementAndGet();
+        }
+    }
+
+
+    // plays `games` games on one connection with a JStrat on the client
+    // side, returns the number of client moves
+    private static long client(String host, int port, int games, String opponent) throws IOException {
+        long moves = 0;
+        try (Socket s = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            in.readLine(); // HELLO
+            JStrat strat = new JStrat('X');
+            for (int g = 0; g < games; g++) {
+                boolean isX = g % 2 == 0;
+                out.write("PLAY " + (isX ? "X" : "O") + " " + opponent + "\n");
+                out.flush();
+
+                int field = 0;
+                String line;
+                while ((line = in.readLine()) != null && !line.startsWith("RESULT")) {
+                    if (line.startsWith("BOARD ")) {
+                        field = Board.parseCompactString(line.substring(6));
+                    } else if (line.equals("TURN")) {
+                        out.write("MOVE " + strat.makeMove(field, isX) + "\n");
+                        out.flush();
+                        moves++;
+                    }
+                }
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+        return moves;
+    }
+
+    public static void load(String host, int port, int clients, int games, String opponent) throws Exception {
+        ExecutorService pool = Threads.newPerTaskExecutor("GameServer-client");
+        List<Future<Long>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            futures.add(pool.submit(() -> GameServer.client(host, port, games, opponent)));
+        }
+        long moves = 0;
+        int failed = 0;
+        for (Future<Long> f : futures) {
+            try {
+                moves += f.get();
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("[GameServer] %d sessions (%d failed), %d games, %d client moves in %d ms",
+            clients, failed, (long) clients * games, moves, elapsed / 1000000));
+        System.out.println(String.format("[GameServer] %.0f sessions/s, %.0f games/s, %.0f client moves/s (%s threads)",
+            clients / seconds, clients * (double) games / seconds, moves / seconds,
+            Threads.hasVirtualThreads() ? "virtual" : "platform"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = (args.length >= 1) ? args[0] : "serve";
+        if (mode.equals("load")) {
+            int clients = (args.length >= 4) ? Integer.parseInt(args[3]) : 1000;
+            int games = (args.length >= 5) ? Integer.parseInt(args[4]) : 10;
+            GameServer.load(args[1], Integer.parseInt(args[2]), clients, games, "jstrat");
+        } else if (mode.equals("bench")) {
+            int clients = (args.length >= 2) ? Integer.parseInt(args[1]) : 1000;
+            int games = (args.length >= 3) ? Integer.parseInt(args[2]) : 10;
+            Board.precompute();
+            GameServer server = new GameServer(0, GameServer.DEFAULT_MOVE_TIMEOUT);
+            server.start();
+            GameServer.load("127.0.0.1", server.getPort(), clients, games, "cstrat");
+            System.out.println("[GameServer] " + server.stats());
+            System.out.println("[GameServer] " + Metrics.INSTANCE);
+            server.close();
+        } else {
+            int port = (args.length >= 2) ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+            int timeout = (args.length >= 3) ? Integer.parseInt(args[2]) : GameServer.DEFAULT_MOVE_TIMEOUT;
+            Metrics.register();
+            Board.solver().warmUp();
+            GameServer server = new GameServer(port, timeout);
+            server.start();
+            System.out.println("[GameServer] listening on port " + server.getPort());
+            Thread.currentThread().join();
+        }
+    }
+}
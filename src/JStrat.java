@@ -1,83 +1,110 @@
-import java.util.ArrayList;
+// Rule based player: win, block, fork, block the enemy's fork, then center,
+// opposite corner, corner, side.
+//
+// Threats come from a table indexed by a player's 9-bit occupancy mask, so a
+// move needs no search and no allocation.
+public class JStrat implements Player, PackedPlayer {
+    private static final Lines[] LINES = Lines.values();
+    private static final int CENTER = 0x010;
+    private static final int CORNERS = 0x145;
+    private static final int SIDES = 0x0AA;
+
+    // COMPLETIONS[m]: sectors that complete a line holding two of m's marks
+    // (whether they are still free is up to the caller)
+    private static final int[] COMPLETIONS = new int[1 << 9];
+    static {
+        for (int m = 0; m < COMPLETIONS.length; m++) {
+            for (Lines line : LINES) {
+                int marks = m & line.getMask();
+                if (line != Lines.NONE && Integer.bitCount(marks) == 2) {
+                    COMPLETIONS[m] |= line.getMask() & ~marks;
+                }
+            }
+        }
+    }
 
-public class JStrat implements Player {
     private char playerMark;
-    private char enemyMark;
 
     public JStrat(char playerMark) {
         this.playerMark = playerMark;
-        if (playerMark == 'X') {
-            this.enemyMark = 'O';
-        } else {
-            this.enemyMark = 'X';
-        }
     }
 
     @Override
     public Move makeMove(TicTacToe game) {
-
-        return null;
+        return new Move(playerMark, this.makeMove(game.getField(), playerMark == 'X'));
     }
 
-    private ArrayList<WinBy> potentialWinBy(TicTacToe game) {
-        ArrayList<Integer> xPos = game.getXPos();
-        ArrayList<Integer> oPos = game.getOPos();
-        ArrayList<WinBy> winBy = new ArrayList<WinBy>();
-
-        char[] xAndO = new char[9];
-        for (int i = 0; i < 9; i++) {
-            if (xPos.indexOf(i) != -1) {
-                xAndO[i] = 'X';
-            } else if (oPos.indexOf(i) != -1) {
-                xAndO[i] = 'O';
-            } else {
-                xAndO[i] = ' ';
-            }
+    // GAME_OVER if the board is full
+    public int makeMove(int field, boolean isX) {
+        int own = isX ? Board.xMask(field) : Board.oMask(field);
+        int enemy = isX ? Board.oMask(field) : Board.xMask(field);
+        int empty = Board.legalMoves(field);
+        if (empty == 0) {
+            return PackedPlayer.GAME_OVER;
         }
 
-        if (hasTwoDiag(xAndO, playerMark) != Lines.NONE && hasTwoHori(xAndO, playerMark) != Lines.NONE && hasTwoVert(xAndO, playerMark) != Lines.NONE) {
-            winBy.add(WinBy.FRIENDLY);
+        int moves = threats(own, empty);
+        if (moves == 0) {
+            moves = threats(enemy, empty);
         }
-        if (hasTwoDiag(xAndO, enemyMark) != Lines.NONE && hasTwoHori(xAndO, enemyMark) != Lines.NONE && hasTwoVert(xAndO, enemyMark) != Lines.NONE) {
-            winBy.add(WinBy.ENEMY);
+        if (moves == 0) {
+            moves = forks(own, empty);
         }
-
-        if (winBy.size() == 0) {
-            winBy.add(WinBy.NONE);
-            return winBy;
-        } else {
-            return winBy;
+        if (moves == 0) {
+            moves = blockForks(own, enemy, empty);
+        }
+        if (moves == 0) {
+            moves = empty & CENTER;
         }
+        if (moves == 0) {
+            // corners opposite an enemy corner: mirror the enemy's corners through the center
+            moves = empty & mirror(enemy & CORNERS);
+        }
+        if (moves == 0) {
+            moves = empty & CORNERS;
+        }
+        if (moves == 0) {
+            moves = empty & SIDES;
+        }
+        return Integer.numberOfTrailingZeros(moves);
     }
 
-    private Lines hasTwoDiag(char[] xAndO, char mark) {
-        if (xAndO[0] == mark && xAndO[4] == mark|| xAndO[4] == mark && xAndO[8] == mark || xAndO[0] == mark && xAndO[8] == mark) {
-            return Lines.TL_BR_DIAG;
-        } else if(xAndO[2] == mark && xAndO[4] == mark || xAndO[4] == mark && xAndO[6] == mark || xAndO[2] == mark && xAndO[6] == mark) {
-            return Lines.TR_BL_DIAG;
-        }
-        return Lines.NONE;
+    // free sectors that win for the owner of `marks`
+    private static int threats(int marks, int empty) {
+        return COMPLETIONS[marks] & empty;
     }
 
-    private Lines hasTwoHori(char[] xAndO, char mark) {
-        if (xAndO[0] == mark && xAndO[1] == mark || xAndO[1] == mark && xAndO[2] == mark || xAndO[0] == mark && xAndO[2] == mark) {
-            return Lines.TOP_HOR;
-        } else if (xAndO[3] == mark && xAndO[4] == mark || xAndO[4] == mark && xAndO[5] == mark || xAndO[3] == mark && xAndO[5] == mark) {
-            return Lines.MID_HOR;
-        } else if (xAndO[6] == mark && xAndO[7] == mark || xAndO[7] == mark && xAndO[8] == mark || xAndO[6] == mark && xAndO[8] == mark) {
-            return Lines.BOT_HOR;
+    // free sectors that give the owner of `marks` two threats at once
+    private static int forks(int marks, int empty) {
+        int forks = 0;
+        for (int free = empty; free != 0; free &= free - 1) {
+            int bit = free & -free;
+            if (Integer.bitCount(threats(marks | bit, empty & ~bit)) >= 2) {
+                forks |= bit;
+            }
         }
-        return Lines.NONE;
+        return forks;
     }
 
-    private Lines hasTwoVert(char[] xAndO, char mark) {
-        if (xAndO[0] == mark && xAndO[3] == mark || xAndO[3] == mark && xAndO[6] == mark || xAndO[0] == mark && xAndO[6] == mark) {
-            return Lines.LEFT_VERT;
-        } else if (xAndO[1] == mark && xAndO[4] == mark || xAndO[4] == mark && xAndO[7] == mark || xAndO[1] == mark && xAndO[7] == mark) {
-            return Lines.MID_VERT;
-        } else if (xAndO[2] == mark && xAndO[5] == mark || xAndO[5] == mark && xAndO[8] == mark || xAndO[2] == mark && xAndO[8] == mark) {
-            return Lines.RIGHT_VERT;
+    private static int blockForks(int own, int enemy, int empty) {
+        int enemyForks = forks(enemy, empty);
+        if (Integer.bitCount(enemyForks) <= 1) {
+            return enemyForks;
         }
-        return Lines.NONE;
+
+        // several forks can't all be blocked: make a threat instead, whose
+        // block does not give the enemy its fork
+        for (int free = empty; free != 0; free &= free - 1) {
+            int bit = free & -free;
+            int threat = threats(own | bit, empty & ~bit);
+            if (threat != 0 && (threat & enemyForks) == 0) {
+                return bit;
+            }
+        }
+        return enemyForks;
+    }
+
+    private static int mirror(int mask) {
+        return Integer.reverse(mask) >>> (32 - 9);
     }
 }
@@ -1,11 +1,31 @@
 public enum Lines {
-    LEFT_VERT,
-    MID_VERT,
-    RIGHT_VERT,
-    TOP_HOR,
-    MID_HOR,
-    BOT_HOR,
-    TL_BR_DIAG,
-    TR_BL_DIAG,
-    NONE
+    LEFT_VERT(0x049),
+    MID_VERT(0x092),
+    RIGHT_VERT(0x124),
+    TOP_HOR(0x007),
+    MID_HOR(0x038),
+    BOT_HOR(0x1C0),
+    TL_BR_DIAG(0x111),
+    TR_BL_DIAG(0x054),
+    NONE(0x000);
+
+    // sectors on the line, bit i = sector i
+    private final int mask;
+
+    private Lines(int mask) {
+        this.mask = mask;
+    }
+
+    public int getMask() {
+        return this.mask;
+    }
+
+    // the masks of the eight lines, in declaration order without NONE
+    public static int[] masks() {
+        int[] masks = new int[Lines.values().length - 1];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = Lines.values()[i].getMask();
+        }
+        return masks;
+    }
 }
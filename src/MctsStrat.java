@@ -0,0 +1,356 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Monte Carlo tree search player for any MnkBoard.
+//
+// UCT selection, expansion of a leaf on its second visit and a rollout from
+// there. Rollouts play on the bitboards; guided rollouts take an immediate
+// win or block one before falling back to a random cell.
+//
+// The search runs on `threads` workers spread over `roots` independent trees
+// (root parallelism); workers on the same tree share it (tree parallelism).
+// Node statistics are one long, visits << 32 | points, updated with atomic
+// adds: a worker adds the visit on the way down, which acts as a virtual
+// loss for the others until it adds the points on the way back. The move is
+// the root child with the most visits over all trees. Interrupting the
+// thread that called bestMove stops all of its workers like the clock does.
+public class MctsStrat implements Player, PackedPlayer {
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final long VISIT = 1L << 32;
+    private static final int CHECK_EVERY = 63; // iterations between clock checks
+
+    private static final byte ONGOING = 0;
+    private static final byte WIN = 1;  // for the side that moved into the node
+    private static final byte DRAW = 2;
+
+    private static final VarHandle STATS;
+    private static final VarHandle CHILDREN;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATS = lookup.findVarHandle(Node.class, "stats", long.class);
+            CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Node {
+        final int cell;   // the move into this node, -1 at the root
+        final byte outcome;
+        volatile long stats; // visits << 32 | points, 2 per win and 1 per draw for the side that moved here
+        volatile Node[] children;
+
+        Node(int cell, byte outcome) {
+            this.cell = cell;
+            this.outcome = outcome;
+        }
+
+        int visits() {
+            return (int) (this.stats >>> 32);
+        }
+    }
+
+    private final MnkBoard board;
+    private final char mark;
+    private final long iterations;
+    private final long budgetNanos;
+    private final int threads;
+    private final int roots;
+    private final boolean guided;
+    private long lastIterations;
+
+
+    // 3x3, 20000 guided iterations or 100 ms, one tree on all cores
+    public MctsStrat(char mark) {
+        this(mark, new MnkBoard(Board.THREE, Board.THREE, Board.THREE), 20000, 100,
+            Runtime.getRuntime().availableProcessors(), 1, true);
+    }
+
+    // stops after `iterations` in total or `budgetMillis` (none if <= 0),
+    // whichever comes first; `threads` workers share `roots` trees
+    public MctsStrat(char mark, MnkBoard board, long iterations, long budgetMillis, int threads, int roots,
+                     boolean guided) {
+        if (threads < 1 || roots < 1 || roots > threads) {
+            throw new IllegalArgumentException("need 1 <= roots <= threads, got " + roots + " roots, " + threads + " threads");
+        }
+        this.board = board;
+        this.mark = mark;
+        this.iterations = iterations;
+        this.budgetNanos = (budgetMillis > 0) ? budgetMillis * 1000000L : Long.MAX_VALUE;
+        this.threads = threads;
+        this.roots = roots;
+        this.guided = guided;
+    }
+
+
+    // only for 3x3 boards, the only size TicTacToe plays
+    public Move makeMove(TicTacToe game) {
+        return new Move(this.mark, this.makeMove(game.getField(), this.mark == 'X'));
+    }
+
+    public int makeMove(int field, boolean isX) {
+        long x = Board.xMask(field);
+        long o = Board.oMask(field);
+        return isX ? this.bestMove(x, o) : this.bestMove(o, x);
+    }
+
+    // iterations of the last search over all workers
+    public long getIterations() {
+        return this.lastIterations;
+    }
+
+    // best cell for the side owning `own`, or -1 if the board is full
+    public int bestMove(long own, long other) {
+        long empty = this.board.empty(own, other);
+        if (empty == 0) {
+            return -1;
+        }
+        if (Long.bitCount(empty) == 1) {
+            this.lastIterations = 0;
+            return Long.numberOfTrailingZeros(empty);
+        }
+
+        long start = System.nanoTime();
+        Thread caller = Thread.currentThread();
+        AtomicLong remaining = new AtomicLong(this.iterations);
+        Node[] trees = new Node[this.roots];
+        List<Callable<Long>> workers = new ArrayList<>(this.threads);
+        for (int r = 0; r < this.roots; r++) {
+            trees[r] = new Node(-1, MctsStrat.ONGOING);
+        }
+        for (int t = 0; t < this.threads; t++) {
+            Node root = trees[t % this.roots];
+            workers.add(() -> this.search(root, own, other, remaining, start, caller));
+        }
+
+        long done = 0;
+        if (this.threads == 1) {
+            done = this.search(trees[0], own, other, remaining, start, caller);
+        } else {
+            for (Future<Long> f : ForkJoinPool.commonPool().invokeAll(workers)) {
+                try {
+                    done += f.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException("search worker failed", e);
+                }
+            }
+        }
+        this.lastIterations = done;
+
+        // most visits over all trees
+        long[] visits = new long[this.board.cells];
+        for (Node root : trees) {
+            Node[] children = root.children;
+            if (children == null) {
+                continue;
+            }
+            for (Node child : children) {
+                visits[child.cell] += child.visits();
+            }
+        }
+        int best = Long.numberOfTrailingZeros(empty);
+        for (long e = empty; e != 0; e &= e - 1) {
+            int cell = Long.numberOfTrailingZeros(e);
+            if (visits[cell] > visits[best]) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    // runs iterations on `root` until the shared budget is used up, returns
+    // how many this worker ran
+    private long search(Node root, long rootOwn, long rootOther, AtomicLong remaining, long start, Thread caller) {
+        Node[] path = new Node[this.board.cells + 1];
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        long done = 0;
+        while (remaining.getAndDecrement() > 0) {
+            if ((done & MctsStrat.CHECK_EVERY) == 0
+                    && (System.nanoTime() - start > this.budgetNanos || caller.isInterrupted())) {
+                break;
+            }
+            this.iterate(root, rootOwn, rootOther, path, rng);
+            done++;
+        }
+        return done;
+    }
+
+    private void iterate(Node root, long own, long other, Node[] path, ThreadLocalRandom rng) {
+        // selection, adding the visits (virtual losses) on the way down
+        Node node = root;
+        int depth = 0;
+        path[0] = root;
+        long previous = (long) MctsStrat.STATS.getAndAdd(root, MctsStrat.VISIT);
+        while (node.outcome == MctsStrat.ONGOING) {
+            Node[] children = node.children;
+            if (children == null) {
+                if (node != root && (previous >>> 32) == 0) {
+                    break; // first visit of a leaf, roll out from here
+                }
+                children = this.expand(node, own, other);
+            }
+
+            node = MctsStrat.select(children, (int) (previous >>> 32) + 1);
+            previous = (long) MctsStrat.STATS.getAndAdd(node, MctsStrat.VISIT);
+            path[++depth] = node;
+            long moved = own | (1L << node.cell);
+            own = other;
+            other = moved;
+        }
+
+        // 1 if the side that moved into `node` won, -1 if it lost, 0 for a draw
+        int result;
+        if (node.outcome == MctsStrat.WIN) {
+            result = 1;
+        } else if (node.outcome == MctsStrat.DRAW) {
+            result = 0;
+        } else {
+            result = -this.rollout(own, other, rng);
+        }
+
+        for (int d = depth; d >= 1; d--) {
+            if (result != -1) {
+                MctsStrat.STATS.getAndAdd(path[d], (long) (result + 1));
+            }
+            result = -result;
+        }
+    }
+
+    // one child per empty cell; of two workers expanding at once the first
+    // one wins and the other uses its children
+    private Node[] expand(Node node, long own, long other) {
+        long empty = this.board.empty(own, other);
+        Node[] children = new Node[Long.bitCount(empty)];
+        int n = 0;
+        for (long e = empty; e != 0; e &= e - 1) {
+            int cell = Long.numberOfTrailingZeros(e);
+            byte outcome = MctsStrat.ONGOING;
+            if (this.board.winsAt(own | (1L << cell), cell)) {
+                outcome = MctsStrat.WIN;
+            } else if (children.length == 1) {
+                outcome = MctsStrat.DRAW;
+            }
+            children[n++] = new Node(cell, outcome);
+        }
+
+        Node[] witness = (Node[]) MctsStrat.CHILDREN.compareAndExchange(node, (Node[]) null, children);
+        return (witness == null) ? children : witness;
+    }
+
+    private static Node select(Node[] children, int parentVisits) {
+        double logParent = Math.log(parentVisits);
+        Node best = children[0];
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            long stats = child.stats;
+            int visits = (int) (stats >>> 32);
+            if (visits == 0) {
+                return child;
+            }
+            double score = (int) stats / (2.0 * visits) + MctsStrat.EXPLORATION * Math.sqrt(logParent / visits);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // plays to the end, `own` to move; 1 if `own` wins, -1 if it loses
+    private int rollout(long own, long other, ThreadLocalRandom rng) {
+        int sign = 1;
+        for (;;) {
+            long empty = this.board.empty(own, other);
+            if (empty == 0) {
+                return 0;
+            }
+
+            int cell = -1;
+            if (this.guided) {
+                cell = this.winningCell(own, empty);
+                if (cell < 0) {
+                    cell = this.winningCell(other, empty);
+                }
+            }
+            if (cell < 0) {
+                for (int skip = rng.nextInt(Long.bitCount(empty)); skip > 0; skip--) {
+                    empty &= empty - 1;
+                }
+                cell = Long.numberOfTrailingZeros(empty);
+            }
+
+            own |= 1L << cell;
+            if (this.board.winsAt(own, cell)) {
+                return sign;
+            }
+            long moved = own;
+            own = other;
+            other = moved;
+            sign = -sign;
+        }
+    }
+
+    // an empty cell completing a run for `stones`, or -1
+    private int winningCell(long stones, long empty) {
+        for (; empty != 0; empty &= empty - 1) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            if (this.board.winsAt(stones | (1L << cell), cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        // java -cp build MctsStrat [iterations per move] [games] [threads] [roots]
+        // rollouts per second from the empty board, then games against CStrat
+        long iterations = (args.length >= 1) ? Long.parseLong(args[0]) : 20000;
+        int games = (args.length >= 2) ? Integer.parseInt(args[1]) : 200;
+        int threads = (args.length >= 3) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int roots = (args.length >= 4) ? Integer.parseInt(args[3]) : 1;
+        MnkBoard board = new MnkBoard(Board.THREE, Board.THREE, Board.THREE);
+
+        for (boolean guided : new boolean[] { false, true }) {
+            MctsStrat mcts = new MctsStrat('X', board, iterations, 0, threads, roots, guided);
+            long total = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < 2000000000L) {
+                mcts.bestMove(0, 0);
+                total += mcts.getIterations();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("[MctsStrat] %s rollouts: %.0f/s (%d threads, %d roots)",
+                guided ? "guided" : "random", total * 1e9 / elapsed, threads, roots));
+        }
+
+        Board.precompute();
+        int wins = 0, draws = 0, losses = 0;
+        long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            boolean mctsIsX = g % 2 == 0;
+            MctsStrat mcts = new MctsStrat(mctsIsX ? 'X' : 'O', board, iterations, 0,
+                threads, roots, true);
+            CStrat cstrat = new CStrat(mctsIsX ? 'O' : 'X', Board.solver());
+            GameResult result = mctsIsX ? new GameEngine(mcts, cstrat).play() : new GameEngine(cstrat, mcts).play();
+            if (result.getWinner() == Board.DRAW) {
+                draws++;
+            } else if ((result.getWinner() == Board.X) == mctsIsX) {
+                wins++;
+            } else {
+                losses++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("[MctsStrat] vs CStrat, %d iterations per move: %d wins, %d draws, %d losses in %d ms",
+            iterations, wins, draws, losses, elapsed / 1000000));
+    }
+}
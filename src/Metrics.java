@@ -0,0 +1,275 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Counters for the minimax engine and its players.
+//
+// Off unless the JVM runs with -Dttt.metrics=true. Instrumented code checks
+// ENABLED first; it is a static final read once at class init, so when off
+// the JIT drops the counting and timing entirely. When on, all counters are
+// striped (LongAdder), so threads sharing a Solver do not contend on them,
+// and table hits are derived from lookups and misses instead of counted.
+// Timing a decision takes two System.nanoTime() calls, which is most of the
+// cost on a CStrat move.
+//
+// Decisions and precomputes are also emitted as JFR events (tictactoe.*),
+// with or without -Dttt.metrics; unless a recording enables them they cost
+// one isEnabled() check:
+//   java -XX:StartFlightRecording=filename=ttt.jfr ...
+public class Metrics implements MetricsMBean {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ttt.metrics", "false"));
+    public static final Metrics INSTANCE = new Metrics();
+
+    // bucket b counts latencies in [2^(b-1), 2^b) ns, the last one everything above
+    private static final int BUCKETS = 40;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder bestMoves = new LongAdder();
+    private final LongAdder decisionNanos = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[Metrics.BUCKETS];
+    private final LongAccumulator decisionMax = new LongAccumulator(Math::max, 0);
+    private final LongAdder precomputeNanos = new LongAdder();
+    private final LongAdder firstMoves = new LongAdder();
+    private final LongAdder firstMoveNanos = new LongAdder();
+    private final LongAdder ponderHits = new LongAdder();
+    private final LongAdder ponderMisses = new LongAdder();
+    private final LongAdder ponderSavedNanos = new LongAdder();
+    private boolean registered = false;
+
+
+    @Name("tictactoe.Decision")
+    @Label("Decision")
+    @Category("TicTacToe")
+    @Description("A move chosen by CStrat")
+    static class DecisionEvent extends Event {
+        @Label("Field")
+        int field;
+        @Label("Is X")
+        boolean isX;
+        @Label("Move")
+        int move;
+        @Label("Best Moves")
+        int bestMoves;
+    }
+
+    @Name("tictactoe.Precompute")
+    @Label("Precompute")
+    @Category("TicTacToe")
+    @Description("Filling a Solver's table, from the tablebase or by solving")
+    static class PrecomputeEvent extends Event {
+        @Label("Source")
+        String source;
+    }
+
+
+    private Metrics() {
+        for (int b = 0; b < Metrics.BUCKETS; b++) {
+            this.histogram[b] = new LongAdder();
+        }
+    }
+
+    // registers the MBean with the platform server, once
+    public static synchronized void register() {
+        if (!Metrics.ENABLED || Metrics.INSTANCE.registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(Metrics.INSTANCE, new ObjectName("tictactoe:type=Metrics"));
+            Metrics.INSTANCE.registered = true;
+        } catch (JMException e) {
+            System.err.println("[Metrics] could not register MBean: " + e.getMessage());
+        }
+    }
+
+
+    // recording, callers check ENABLED
+
+    public static void lookups(int n) {
+        Metrics.INSTANCE.lookups.add(n);
+    }
+
+    public static void miss() {
+        Metrics.INSTANCE.misses.increment();
+    }
+
+    public static void node() {
+        Metrics.INSTANCE.nodes.increment();
+    }
+
+    // a bestMoves call, which makes `lookups` table lookups
+    public static void bestMoves(int lookups) {
+        Metrics.INSTANCE.bestMoves.increment();
+        Metrics.INSTANCE.lookups.add(lookups);
+    }
+
+    public static void decision(long nanos) {
+        Metrics m = Metrics.INSTANCE;
+        m.decisionNanos.add(nanos);
+        m.histogram[Math.min(64 - Long.numberOfLeadingZeros(nanos), Metrics.BUCKETS - 1)].increment();
+        m.decisionMax.accumulate(nanos);
+    }
+
+    public static void precompute(long nanos) {
+        Metrics.INSTANCE.precomputeNanos.add(nanos);
+    }
+
+    // a move that was pondered (`hit`) or not; `savedNanos` is the search
+    // time the move did not have to wait for
+    public static void ponder(boolean hit, long savedNanos) {
+        Metrics m = Metrics.INSTANCE;
+        (hit ? m.ponderHits : m.ponderMisses).increment();
+        m.ponderSavedNanos.add(savedNanos);
+    }
+
+    // from a player's construction to its first move returned
+    public static void firstMove(long nanos) {
+        Metrics.INSTANCE.firstMoves.increment();
+        Metrics.INSTANCE.firstMoveNanos.add(nanos);
+    }
+
+
+    public boolean isEnabled() {
+        return Metrics.ENABLED;
+    }
+
+    public long getCacheHits() {
+        // hits are not counted, only lookups and misses; sums taken while
+        // threads run are not one consistent snapshot
+        return Math.max(0, this.lookups.sum() - this.misses.sum());
+    }
+
+    public long getCacheMisses() {
+        return this.misses.sum();
+    }
+
+    public double getCacheHitRate() {
+        long total = this.lookups.sum();
+        return total == 0 ? 0 : (double) this.getCacheHits() / total;
+    }
+
+    public long getNodes() {
+        return this.nodes.sum();
+    }
+
+    public long getBestMovesCalls() {
+        return this.bestMoves.sum();
+    }
+
+    public long getDecisions() {
+        long n = 0;
+        for (LongAdder b : this.histogram) {
+            n += b.sum();
+        }
+        return n;
+    }
+
+    public long getPrecomputeNanos() {
+        return this.precomputeNanos.sum();
+    }
+
+    public long getFirstMoves() {
+        return this.firstMoves.sum();
+    }
+
+    public double getFirstMoveMeanNanos() {
+        long n = this.firstMoves.sum();
+        return n == 0 ? 0 : (double) this.firstMoveNanos.sum() / n;
+    }
+
+    public long getPonderHits() {
+        return this.ponderHits.sum();
+    }
+
+    public long getPonderMisses() {
+        return this.ponderMisses.sum();
+    }
+
+    public double getPonderHitRate() {
+        long hits = this.ponderHits.sum();
+        long total = hits + this.ponderMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getPonderSavedNanos() {
+        return this.ponderSavedNanos.sum();
+    }
+
+    public double getDecisionMeanNanos() {
+        long n = this.getDecisions();
+        return n == 0 ? 0 : (double) this.decisionNanos.sum() / n;
+    }
+
+    public long getDecisionP50Nanos() {
+        return this.percentile(0.50);
+    }
+
+    public long getDecisionP99Nanos() {
+        return this.percentile(0.99);
+    }
+
+    public long getDecisionMaxNanos() {
+        return this.decisionMax.get();
+    }
+
+    // upper bound of the bucket holding the p-th decision
+    public long percentile(double p) {
+        long[] counts = new long[Metrics.BUCKETS];
+        long total = 0;
+        for (int b = 0; b < Metrics.BUCKETS; b++) {
+            counts[b] = this.histogram[b].sum();
+            total += counts[b];
+        }
+        long rank = (long) Math.ceil(p * total);
+        for (int b = 0; b < Metrics.BUCKETS; b++) {
+            rank -= counts[b];
+            if (rank <= 0 && counts[b] != 0) {
+                return 1L << b;
+            }
+        }
+        return 0;
+    }
+
+    public void reset() {
+        this.lookups.reset();
+        this.misses.reset();
+        this.nodes.reset();
+        this.bestMoves.reset();
+        this.decisionNanos.reset();
+        for (LongAdder b : this.histogram) {
+            b.reset();
+        }
+        this.decisionMax.reset();
+        this.precomputeNanos.reset();
+        this.firstMoves.reset();
+        this.firstMoveNanos.reset();
+        this.ponderHits.reset();
+        this.ponderMisses.reset();
+        this.ponderSavedNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        if (!Metrics.ENABLED) {
+            return "metrics disabled";
+        }
+        return String.format("cache hits: %d, misses: %d (%.2f%% hits), nodes: %d, bestMoves: %d, "
+            + "decisions: %d (mean %.0f ns, p50 < %d ns, p99 < %d ns, max %d ns), precompute: %d us, "
+            + "first move: mean %.0f us over %d players, ponder: %d hits, %d misses, saved %d us",
+            this.getCacheHits(), this.getCacheMisses(), 100 * this.getCacheHitRate(), this.getNodes(),
+            this.getBestMovesCalls(), this.getDecisions(), this.getDecisionMeanNanos(), this.getDecisionP50Nanos(),
+            this.getDecisionP99Nanos(), this.getDecisionMaxNanos(), this.getPrecomputeNanos() / 1000,
+            this.getFirstMoveMeanNanos() / 1000, this.getFirstMoves(), this.getPonderHits(), this.getPonderMisses(),
+            this.getPonderSavedNanos() / 1000);
+    }
+}
@@ -0,0 +1,44 @@
+// JMX view of Metrics, registered as "tictactoe:type=Metrics"
+public interface MetricsMBean {
+    boolean isEnabled();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRate();
+
+    long getNodes();
+
+    long getBestMovesCalls();
+
+    long getDecisions();
+
+    long getPrecomputeNanos();
+
+    long getFirstMoves();
+
+    // time to first move, from CStrat's construction
+    double getFirstMoveMeanNanos();
+
+    long getPonderHits();
+
+    long getPonderMisses();
+
+    double getPonderHitRate();
+
+    // search time pondered moves did not have to wait for
+    long getPonderSavedNanos();
+
+    double getDecisionMeanNanos();
+
+    // p50 and p99 are approximate, from the power of two buckets of the
+    // histogram
+    long getDecisionP50Nanos();
+
+    long getDecisionP99Nanos();
+
+    long getDecisionMaxNanos();
+
+    void reset();
+}
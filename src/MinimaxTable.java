@@ -0,0 +1,304 @@
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Minimax results for every position, one 2-bit entry per symmetry class and
+// side to move.
+//
+// A field is mapped to the rank of its class under the 8 symmetries of the
+// board without a table over all 3^9 fields. The symmetries keep the center
+// and move corners to corners and edges to edges, so a class is the center,
+// the class of the four corners (21 of them) and the class of the four
+// edges under the symmetries that keep those corners in place. A rank takes
+// three dependent loads from about 6 KiB of tables instead of a 39 KiB
+// table by base 3. The 2862 classes times two sides fit into 179 longs.
+//
+// Entries only ever go from NOT_COMPUTED to their final value, so the table
+// can be shared between threads: reads are opaque, writes an atomic OR.
+class MinimaxTable {
+    // cell permutations: identity, 3 rotations, 4 reflections
+    // (SYMMETRIES[s][i] is the cell that cell i is moved to)
+    public static final int[][] SYMMETRIES = new int[][] {
+        { 0, 1, 2, 3, 4, 5, 6, 7, 8 },
+        { 2, 5, 8, 1, 4, 7, 0, 3, 6 },
+        { 8, 7, 6, 5, 4, 3, 2, 1, 0 },
+        { 6, 3, 0, 7, 4, 1, 8, 5, 2 },
+        { 2, 1, 0, 5, 4, 3, 8, 7, 6 },
+        { 6, 7, 8, 3, 4, 5, 0, 1, 2 },
+        { 0, 3, 6, 1, 4, 7, 2, 5, 8 },
+        { 8, 5, 2, 7, 4, 1, 6, 3, 0 },
+    };
+    public static final int NUM_POSITIONS = 19683; // 3^9
+    public static final int NUM_CLASSES;
+    public static final int NUM_WORDS;
+
+    private static final int BITS = 2;
+    private static final int PER_WORD = Long.SIZE / MinimaxTable.BITS;
+    // own copies of Board.INT2MARK and its inverse, Board is not touched
+    // during class init
+    private static final byte[] MARK2DIGIT = new byte[] { 0, 1, 0, 2 };
+    private static final byte[] DIGIT2MARK = new byte[] { 0, 1, 3 };
+    private static final short[] BASE3_LO = new short[1 << 10]; // cells 0 to 4
+    private static final short[] BASE3_HI = new short[1 << 8];  // cells 5 to 8
+
+    private static final int[] CORNERS = new int[] { 0, 2, 6, 8 };
+    private static final int[] EDGES = new int[] { 1, 3, 5, 7 };
+    private static final int PATTERNS = 81; // 3^4 for four cells
+    // like BASE3_LO and BASE3_HI, but they add up to the center in bits
+    // 14-15, the corners (cells 0, 2, 6, 8) in base 3 in bits 7-13 and the
+    // edges (1, 3, 5, 7) in base 3 in bits 0-6
+    private static final char[] DIGITS_LO = new char[1 << 10];
+    private static final char[] DIGITS_HI = new char[1 << 8];
+    // by center and corners: the first rank of their class (bits 0-11) and
+    // where their row of EDGE_CLASS starts
+    private static final int[] CORNER = new int[3 << 7];
+    // rows of 81: the class of the edges once a symmetry has taken the
+    // corners to their smallest form, under the symmetries that keep it
+    private static final byte[] EDGE_CLASS;
+    // alongside EDGE_CLASS: the symmetry that takes a field to the canonical
+    // field of its class, the smallest corners and the first edges of their
+    // orbit (0 for the canonical fields themselves)
+    private static final byte[] EDGE_SYMMETRY;
+    // INVERSES[s] undoes SYMMETRIES[s]
+    public static final int[][] INVERSES = new int[MinimaxTable.SYMMETRIES.length][Board.THREE_SQ];
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        for (int bits = 0; bits < MinimaxTable.BASE3_LO.length; bits++) {
+            MinimaxTable.BASE3_LO[bits] = (short) MinimaxTable.base3Slow(bits, 0, 5);
+        }
+        for (int bits = 0; bits < MinimaxTable.BASE3_HI.length; bits++) {
+            MinimaxTable.BASE3_HI[bits] = (short) MinimaxTable.base3Slow(bits << 10, 5, 9);
+        }
+
+        int[][] cornerImage = new int[MinimaxTable.SYMMETRIES.length][];
+        int[][] edgeImage = new int[MinimaxTable.SYMMETRIES.length][];
+        for (int s = 0; s < MinimaxTable.SYMMETRIES.length; s++) {
+            cornerImage[s] = MinimaxTable.patternImage(MinimaxTable.CORNERS, 7, MinimaxTable.SYMMETRIES[s]);
+            edgeImage[s] = MinimaxTable.patternImage(MinimaxTable.EDGES, 0, MinimaxTable.SYMMETRIES[s]);
+        }
+
+        // for every corner pattern the smallest of its images, the symmetry
+        // that gets there, and the classes of the edges under the group of
+        // symmetries that keep that smallest form (a mask of symmetries)
+        Map<Integer, byte[]> groupClasses = new HashMap<>();
+        Map<Integer, Integer> rows = new HashMap<>();
+        ByteArrayOutputStream edgeClass = new ByteArrayOutputStream();
+        ByteArrayOutputStream edgeSymmetry = new ByteArrayOutputStream();
+        int[] first = new int[MinimaxTable.PATTERNS];
+        int[] corners = new int[MinimaxTable.PATTERNS];
+        int perCenter = 0;
+        for (int c = 0; c < MinimaxTable.PATTERNS; c++) {
+            int min = c, toMin = 0;
+            for (int s = 0; s < MinimaxTable.SYMMETRIES.length; s++) {
+                if (cornerImage[s][c] < min) {
+                    min = cornerImage[s][c];
+                    toMin = s;
+                }
+            }
+            int group = 0;
+            for (int s = 0; s < MinimaxTable.SYMMETRIES.length; s++) {
+                if (cornerImage[s][min] == min) {
+                    group |= 1 << s;
+                }
+            }
+            byte[] classes = groupClasses.computeIfAbsent(group, g -> MinimaxTable.orbits(edgeImage, g));
+            if (min == c) {
+                // the smallest form of each class comes first
+                first[c] = perCenter;
+                perCenter += classes[MinimaxTable.PATTERNS];
+            }
+
+            int key = (toMin << MinimaxTable.SYMMETRIES.length) | group;
+            Integer row = rows.get(key);
+            if (row == null) {
+                row = edgeClass.size();
+                rows.put(key, row);
+                for (int e = 0; e < MinimaxTable.PATTERNS; e++) {
+                    int image = edgeImage[toMin][e];
+                    edgeClass.write(classes[image]);
+                    // the first symmetry of the group to take the edges to
+                    // the first pattern of their orbit, after toMin
+                    int rep = 0;
+                    while (classes[rep] != classes[image]) {
+                        rep++;
+                    }
+                    int g = 0;
+                    while ((group & (1 << g)) == 0 || edgeImage[g][image] != rep) {
+                        g++;
+                    }
+                    edgeSymmetry.write(MinimaxTable.compose(toMin, g));
+                }
+            }
+            corners[c] = first[min] | (row << 12);
+        }
+        EDGE_CLASS = edgeClass.toByteArray();
+        EDGE_SYMMETRY = edgeSymmetry.toByteArray();
+        for (int s = 0; s < MinimaxTable.SYMMETRIES.length; s++) {
+            for (int i = 0; i < Board.THREE_SQ; i++) {
+                MinimaxTable.INVERSES[s][MinimaxTable.SYMMETRIES[s][i]] = i;
+            }
+        }
+        NUM_CLASSES = 3 * perCenter;
+        for (int center = 0; center < 3; center++) {
+            for (int c = 0; c < MinimaxTable.PATTERNS; c++) {
+                MinimaxTable.CORNER[(center << 7) | c] = corners[c] + center * perCenter;
+            }
+        }
+        for (int bits = 0; bits < MinimaxTable.DIGITS_LO.length; bits++) {
+            MinimaxTable.DIGITS_LO[bits] = (char) MinimaxTable.cornersAndEdges(bits);
+        }
+        for (int bits = 0; bits < MinimaxTable.DIGITS_HI.length; bits++) {
+            MinimaxTable.DIGITS_HI[bits] = (char) MinimaxTable.cornersAndEdges(bits << 10);
+        }
+        NUM_WORDS = (2 * MinimaxTable.NUM_CLASSES + MinimaxTable.PER_WORD - 1) / MinimaxTable.PER_WORD;
+    }
+
+    private final long[] words;
+
+
+    public MinimaxTable() {
+        this.words = new long[MinimaxTable.NUM_WORDS];
+    }
+
+
+    private static int base3Slow(int field, int from, int to) {
+        int idx = 0;
+        for (int i = to - 1; i >= from; i--) {
+            idx = 3 * idx + MinimaxTable.MARK2DIGIT[(field >> (2 * i)) & Board.MASK];
+        }
+        for (int i = 0; i < from; i++) {
+            idx *= 3;
+        }
+        return idx;
+    }
+
+    // same digit order as Board.fromInt
+    public static int fromBase3(int idx) {
+        int field = 0;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            field |= MinimaxTable.DIGIT2MARK[idx % 3] << (2 * i);
+            idx /= 3;
+        }
+        return field;
+    }
+
+    public static int base3(int field) {
+        return MinimaxTable.BASE3_LO[field & 0x3FF] + MinimaxTable.BASE3_HI[(field >>> 10) & 0xFF];
+    }
+
+    public static int transform(int field, int[] sym) {
+        int result = 0;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            result |= ((field >> (2 * i)) & Board.MASK) << (2 * sym[i]);
+        }
+        return result;
+    }
+
+    // center << 14 | corners in base 3 << 7 | edges in base 3
+    private static int cornersAndEdges(int field) {
+        int corners = 0, edges = 0;
+        for (int i = 3; i >= 0; i--) {
+            corners = 3 * corners + MinimaxTable.MARK2DIGIT[(field >> (2 * MinimaxTable.CORNERS[i])) & Board.MASK];
+            edges = 3 * edges + MinimaxTable.MARK2DIGIT[(field >> (2 * MinimaxTable.EDGES[i])) & Board.MASK];
+        }
+        int center = MinimaxTable.MARK2DIGIT[(field >> 8) & Board.MASK];
+        return (center << 14) | (corners << 7) | edges;
+    }
+
+    // the index of the symmetry that applies `first`, then `second`
+    private static int compose(int first, int second) {
+        int[] both = new int[Board.THREE_SQ];
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            both[i] = MinimaxTable.SYMMETRIES[second][MinimaxTable.SYMMETRIES[first][i]];
+        }
+        int s = 0;
+        while (!Arrays.equals(MinimaxTable.SYMMETRIES[s], both)) {
+            s++;
+        }
+        return s;
+    }
+
+    // the orbit of each edge pattern under the symmetries in `group`,
+    // numbered densely, followed by their number
+    private static byte[] orbits(int[][] edgeImage, int group) {
+        byte[] classes = new byte[MinimaxTable.PATTERNS + 1];
+        Arrays.fill(classes, (byte) -1);
+        int n = 0;
+        for (int e = 0; e < MinimaxTable.PATTERNS; e++) {
+            if (classes[e] < 0) {
+                for (int s = 0; s < MinimaxTable.SYMMETRIES.length; s++) {
+                    if ((group & (1 << s)) != 0) {
+                        classes[edgeImage[s][e]] = (byte) n;
+                    }
+                }
+                n++;
+            }
+        }
+        classes[MinimaxTable.PATTERNS] = (byte) n;
+        return classes;
+    }
+
+    // for each pattern of `cells` in base 3, the pattern after `sym`;
+    // `shift` picks it out of cornersAndEdges
+    private static int[] patternImage(int[] cells, int shift, int[] sym) {
+        int[] image = new int[MinimaxTable.PATTERNS];
+        for (int p = 0; p < MinimaxTable.PATTERNS; p++) {
+            int field = 0;
+            for (int i = 0, d = p; i < cells.length; i++, d /= 3) {
+                field |= MinimaxTable.DIGIT2MARK[d % 3] << (2 * cells[i]);
+            }
+            field = MinimaxTable.transform(field, sym);
+            image[p] = (MinimaxTable.cornersAndEdges(field) >> shift) & 0x7F;
+        }
+        return image;
+    }
+
+    public static int classRank(int field) {
+        int digits = MinimaxTable.DIGITS_LO[field & 0x3FF] + MinimaxTable.DIGITS_HI[(field >>> 10) & 0xFF];
+        int info = MinimaxTable.CORNER[digits >>> 7];
+        return (info & 0xFFF) + MinimaxTable.EDGE_CLASS[(info >>> 12) + (digits & 0x7F)];
+    }
+
+    // classRank(field) << 3 | s, where SYMMETRIES[s] takes `field` to the
+    // canonical field of its class; one class has one canonical field, so
+    // tables by class can keep answers in its orientation
+    public static int classAndSymmetry(int field) {
+        int digits = MinimaxTable.DIGITS_LO[field & 0x3FF] + MinimaxTable.DIGITS_HI[(field >>> 10) & 0xFF];
+        int info = MinimaxTable.CORNER[digits >>> 7];
+        int edges = (info >>> 12) + (digits & 0x7F);
+        return (((info & 0xFFF) + MinimaxTable.EDGE_CLASS[edges]) << 3) | MinimaxTable.EDGE_SYMMETRY[edges];
+    }
+
+    public static int index(int field, boolean isX) {
+        return (MinimaxTable.classRank(field) << 1) | (isX ? 1 : 0);
+    }
+
+
+    public long word(int i) {
+        return (long) MinimaxTable.WORDS.getOpaque(this.words, i);
+    }
+
+    public byte get(int index) {
+        long word = this.word(index / MinimaxTable.PER_WORD);
+        return (byte) ((word >>> (MinimaxTable.BITS * (index % MinimaxTable.PER_WORD))) & Board.MASK);
+    }
+
+    // only valid for entries that are still NOT_COMPUTED
+    public void put(int index, byte value) {
+        long bits = (long) value << (MinimaxTable.BITS * (index % MinimaxTable.PER_WORD));
+        MinimaxTable.WORDS.getAndBitwiseOr(this.words, index / MinimaxTable.PER_WORD, bits);
+    }
+
+    // not safe while other threads use the table
+    public void clear() {
+        Arrays.fill(this.words, 0L);
+    }
+
+    public int sizeInBytes() {
+        return MinimaxTable.NUM_WORDS * Long.BYTES;
+    }
+}
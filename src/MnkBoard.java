@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Geometry of an m,n,k-game: `rows` x `cols` cells, `k` in a row wins.
+//
+// Positions are bitboards, one long per side with bit (row * cols + col) set
+// for every stone, so boards up to 64 cells are supported. The board itself
+// is immutable and only holds the generated win masks.
+public class MnkBoard {
+    public static final int MAX_CELLS = Long.SIZE;
+
+    public final int rows;
+    public final int cols;
+    public final int k;
+    public final int cells;
+    public final long full;
+    public final long[] winMasks;    // every run of k cells
+    public final long[][] cellMasks; // the runs through each cell
+
+
+    public MnkBoard(int rows, int cols, int k) {
+        if (rows * cols > MnkBoard.MAX_CELLS || k > Math.max(rows, cols) || k < 1) {
+            throw new IllegalArgumentException("unsupported board " + rows + "x" + cols + " k=" + k);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.k = k;
+        this.cells = rows * cols;
+        this.full = (this.cells == MnkBoard.MAX_CELLS) ? ~0L : (1L << this.cells) - 1;
+
+        // directions: right, down, down-right, down-left
+        int[][] dirs = new int[][] { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+        List<Long> masks = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                for (int[] d : dirs) {
+                    int endRow = row + d[0] * (k - 1);
+                    int endCol = col + d[1] * (k - 1);
+                    if (endRow < 0 || endRow >= rows || endCol < 0 || endCol >= cols) {
+                        continue;
+                    }
+
+                    long mask = 0;
+                    for (int i = 0; i < k; i++) {
+                        mask |= 1L << this.cell(row + d[0] * i, col + d[1] * i);
+                    }
+                    masks.add(mask);
+                }
+            }
+        }
+        this.winMasks = new long[masks.size()];
+        for (int i = 0; i < this.winMasks.length; i++) {
+            this.winMasks[i] = masks.get(i);
+        }
+
+        this.cellMasks = new long[this.cells][];
+        for (int c = 0; c < this.cells; c++) {
+            List<Long> through = new ArrayList<>();
+            for (long mask : this.winMasks) {
+                if ((mask & (1L << c)) != 0) {
+                    through.add(mask);
+                }
+            }
+            this.cellMasks[c] = new long[through.size()];
+            for (int i = 0; i < this.cellMasks[c].length; i++) {
+                this.cellMasks[c][i] = through.get(i);
+            }
+        }
+    }
+
+
+    public int cell(int row, int col) {
+        return row * this.cols + col;
+    }
+
+    // whether `stones` contain a run through `cell`, i.e. whether the stone
+    // just placed on `cell` has won
+    public boolean winsAt(long stones, int cell) {
+        for (long mask : this.cellMasks[cell]) {
+            if ((stones & mask) == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasWin(long stones) {
+        for (long mask : this.winMasks) {
+            if ((stones & mask) == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long empty(long x, long o) {
+        return this.full & ~(x | o);
+    }
+
+    public String toString(long x, long o) {
+        String s = "";
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.cols; col++) {
+                long bit = 1L << this.cell(row, col);
+                s += (x & bit) != 0 ? 'X' : (o & bit) != 0 ? 'O' : '.';
+                s += col + 1 == this.cols ? "\n" : " ";
+            }
+        }
+        return s;
+    }
+}
@@ -0,0 +1,319 @@
+import java.util.Arrays;
+
+// Alpha-beta player for any MnkBoard.
+//
+// Negamax with iterative deepening under a per-move time budget. Moves are
+// ordered by the best move of the previous iteration, two killer moves per
+// ply and a history table; leaves are scored by counting the runs that are
+// still open for only one side. An optional TranspositionTable, keyed by
+// Zobrist hashes of the stones, keeps bounds and best moves across
+// iterations, moves and players sharing it. Interrupting the searching
+// thread ends the search like the clock does, with the best move of the
+// last complete iteration.
+public class MnkStrat implements Player, PackedPlayer {
+    public static final int WIN = 1_000_000;
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int CHECK_EVERY = 1023; // nodes between clock checks
+
+    private final MnkBoard board;
+    private final char mark;
+    private final long budgetNanos;
+    private final int[] runWeights;
+    private final TranspositionTable tt; // null for none
+    private final long[][] zobrist;      // [X, O][cell]
+
+    // per-search state, reused between moves
+    private final int[][] moves;
+    private final int[][] scores;
+    private final int[][] killers;
+    private final int[][] history;
+    private long deadline;
+    private long nodes;
+    private int depth;
+    private boolean aborted;
+
+
+    public MnkStrat(char mark) {
+        this(mark, new MnkBoard(Board.THREE, Board.THREE, Board.THREE), 100);
+    }
+
+    public MnkStrat(char mark, MnkBoard board, long budgetMillis) {
+        this(mark, board, budgetMillis, null);
+    }
+
+    // `tt` may be shared with players searching on other threads; whoever
+    // owns it calls its newSearch() once per move, the players never do
+    public MnkStrat(char mark, MnkBoard board, long budgetMillis, TranspositionTable tt) {
+        this.board = board;
+        this.mark = mark;
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.tt = tt;
+        this.zobrist = TranspositionTable.zobristKeys(board.cells);
+
+        // an open run with c stones is worth 4^c, (k-1) stones is a threat
+        this.runWeights = new int[board.k + 1];
+        for (int c = 1; c < board.k; c++) {
+            this.runWeights[c] = 1 << (2 * c);
+        }
+
+        int maxPly = board.cells + 1;
+        this.moves = new int[maxPly][board.cells];
+        this.scores = new int[maxPly][board.cells];
+        this.killers = new int[maxPly][2];
+        this.history = new int[2][board.cells];
+    }
+
+
+    // only for 3x3 boards, the only size TicTacToe plays
+    public Move makeMove(TicTacToe game) {
+        return new Move(this.mark, this.makeMove(game.getField(), this.mark == 'X'));
+    }
+
+    public int makeMove(int field, boolean isX) {
+        long x = Board.xMask(field);
+        long o = Board.oMask(field);
+        return isX ? this.bestMove(x, o) : this.bestMove(o, x);
+    }
+
+    // best cell for the side owning `own`, or -1 if the board is full
+    public int bestMove(long own, long other) {
+        long empty = this.board.empty(own, other);
+        if (empty == 0) {
+            return -1;
+        }
+
+        this.deadline = System.nanoTime() + this.budgetNanos;
+        this.aborted = false;
+        this.nodes = 0;
+        this.depth = 0;
+        for (int[] k : this.killers) {
+            Arrays.fill(k, -1);
+        }
+        for (int[] h : this.history) {
+            Arrays.fill(h, 0);
+        }
+
+        int best = Long.numberOfTrailingZeros(empty);
+        int maxDepth = Long.bitCount(empty);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int move = this.searchRoot(own, other, depth, best);
+            if (this.aborted) {
+                break;
+            }
+            best = move;
+            this.depth = depth;
+        }
+        return best;
+    }
+
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    // of the last complete iteration
+    public int getDepth() {
+        return this.depth;
+    }
+
+    // X always moves first, so equal stone counts mean `own` is X
+    private long key(long own, long other) {
+        boolean ownIsX = Long.bitCount(own) == Long.bitCount(other);
+        long key = 0;
+        for (long s = own; s != 0; s &= s - 1) {
+            key ^= this.zobrist[ownIsX ? 0 : 1][Long.numberOfTrailingZeros(s)];
+        }
+        for (long s = other; s != 0; s &= s - 1) {
+            key ^= this.zobrist[ownIsX ? 1 : 0][Long.numberOfTrailingZeros(s)];
+        }
+        return key;
+    }
+
+    private int searchRoot(long own, long other, int depth, int pvMove) {
+        int n = this.orderMoves(own, other, 0, pvMove);
+        int alpha = -MnkStrat.INF;
+        int best = this.moves[0][0];
+        long key = this.key(own, other);
+        long[] keys = this.zobrist[(Long.bitCount(own) == Long.bitCount(other)) ? 0 : 1];
+        for (int i = 0; i < n; i++) {
+            int cell = this.moves[0][i];
+            int score = -this.negamax(other, own | (1L << cell), key ^ keys[cell], cell, depth - 1,
+                -MnkStrat.INF, -alpha, 1);
+            if (this.aborted) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    // `own` is to move, `other` has just played `last`; `key` hashes both
+    private int negamax(long own, long other, long key, int last, int depth, int alpha, int beta, int ply) {
+        if ((++this.nodes & MnkStrat.CHECK_EVERY) == 0
+                && (System.nanoTime() > this.deadline || Thread.currentThread().isInterrupted())) {
+            this.aborted = true;
+        }
+        if (this.aborted) {
+            return 0;
+        }
+
+        if (this.board.winsAt(other, last)) {
+            return -MnkStrat.WIN + ply;
+        }
+        if (this.board.empty(own, other) == 0) {
+            return 0;
+        }
+        if (depth == 0) {
+            return this.evaluate(own, other);
+        }
+
+        int ttMove = -1;
+        if (this.tt != null) {
+            long data = this.tt.probe(key);
+            if (data != TranspositionTable.MISS) {
+                ttMove = TranspositionTable.move(data);
+                if (TranspositionTable.depth(data) >= depth) {
+                    int score = MnkStrat.fromTable(TranspositionTable.score(data), ply);
+                    int bound = TranspositionTable.bound(data);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= beta)
+                            || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+        }
+
+        int alphaIn = alpha;
+        int best = -1;
+        int n = this.orderMoves(own, other, ply, ttMove);
+        int side = ply & 1;
+        long[] keys = this.zobrist[(Long.bitCount(own) == Long.bitCount(other)) ? 0 : 1];
+        for (int i = 0; i < n; i++) {
+            int cell = this.moves[ply][i];
+            int score = -this.negamax(other, own | (1L << cell), key ^ keys[cell], cell, depth - 1,
+                -beta, -alpha, ply + 1);
+            if (this.aborted) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                best = cell;
+            }
+            if (alpha >= beta) {
+                if (this.killers[ply][0] != cell) {
+                    this.killers[ply][1] = this.killers[ply][0];
+                    this.killers[ply][0] = cell;
+                }
+                this.history[side][cell] += depth * depth;
+                break;
+            }
+        }
+
+        if (this.tt != null) {
+            int bound = (alpha >= beta) ? TranspositionTable.LOWER
+                : (alpha > alphaIn) ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+            this.tt.store(key, MnkStrat.toTable(alpha, ply), depth, bound, (best >= 0) ? best : ttMove);
+        }
+        return alpha;
+    }
+
+    // wins are stored as plies from the stored node, not from the root
+    private static int toTable(int score, int ply) {
+        if (score > MnkStrat.WIN - MnkBoard.MAX_CELLS - 1) {
+            return score + ply;
+        }
+        return (score < -MnkStrat.WIN + MnkBoard.MAX_CELLS + 1) ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MnkStrat.WIN - MnkBoard.MAX_CELLS - 1) {
+            return score - ply;
+        }
+        return (score < -MnkStrat.WIN + MnkBoard.MAX_CELLS + 1) ? score + ply : score;
+    }
+
+    // fills moves[ply] with the empty cells, best first, and returns how many
+    private int orderMoves(long own, long other, int ply, int pvMove) {
+        int[] moves = this.moves[ply];
+        int[] scores = this.scores[ply];
+        int side = ply & 1;
+        int n = 0;
+        for (long empty = this.board.empty(own, other); empty != 0; empty &= empty - 1) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            int score = this.history[side][cell];
+            if (cell == pvMove) {
+                score = MnkStrat.INF;
+            } else if (cell == this.killers[ply][0]) {
+                score = MnkStrat.INF - 2;
+            } else if (cell == this.killers[ply][1]) {
+                score = MnkStrat.INF - 3;
+            }
+            moves[n] = cell;
+            scores[n] = score;
+            n++;
+        }
+
+        // insertion sort, n is at most the number of cells
+        for (int i = 1; i < n; i++) {
+            int move = moves[i], score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+        return n;
+    }
+
+    // from the point of view of `own`
+    private int evaluate(long own, long other) {
+        int score = 0;
+        for (long mask : this.board.winMasks) {
+            long o = own & mask;
+            long t = other & mask;
+            if (t == 0) {
+                score += this.runWeights[Long.bitCount(o)];
+            } else if (o == 0) {
+                score -= this.runWeights[Long.bitCount(t)];
+            }
+        }
+        return score;
+    }
+
+
+    public static void main(String[] args) {
+        // java -cp build MnkStrat [rows cols k] [millis per move]
+        int rows = (args.length >= 3) ? Integer.parseInt(args[0]) : 7;
+        int cols = (args.length >= 3) ? Integer.parseInt(args[1]) : 7;
+        int k = (args.length >= 3) ? Integer.parseInt(args[2]) : 5;
+        long millis = (args.length == 1 || args.length >= 4) ? Long.parseLong(args[args.length - 1]) : 200;
+
+        MnkBoard board = new MnkBoard(rows, cols, k);
+        MnkStrat[] players = new MnkStrat[] { new MnkStrat('X', board, millis), new MnkStrat('O', board, millis) };
+        long[] stones = new long[2];
+        for (int ply = 0; ; ply++) {
+            int side = ply % 2;
+            long start = System.nanoTime();
+            int cell = players[side].bestMove(stones[side], stones[1 - side]);
+            long elapsed = System.nanoTime() - start;
+            if (cell < 0) {
+                System.out.println("Draw after " + ply + " plies");
+                break;
+            }
+            stones[side] |= 1L << cell;
+            System.out.println((side == 0 ? 'X' : 'O') + " plays " + cell + " (" + players[side].getNodes()
+                + " nodes, " + elapsed / 1000 + " us)");
+            System.out.println(board.toString(stones[0], stones[1]));
+            if (board.winsAt(stones[side], cell)) {
+                System.out.println((side == 0 ? 'X' : 'O') + " wins after " + (ply + 1) + " plies");
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+// Player protocol on Board's packed int fields: no TicTacToe, no Move objects,
+// so deciding and applying a move needs no heap allocation.
+public interface PackedPlayer {
+    public static final int GAME_OVER = -1;
+
+    // returns the sector to mark for the side given by isX
+    public int makeMove(int field, boolean isX);
+
+    // as Player.ponder, with the position after the move and the side of
+    // this player; the field is GAME_OVER once the game is over
+    public default void ponder(int field, boolean isX) {
+    }
+
+
+    // lets a PackedPlayer play through the Player interface, pondering
+    // included
+    public static Player asPlayer(PackedPlayer player, char mark) {
+        return new Player() {
+            @Override
+            public Move makeMove(TicTacToe game) {
+                return new Move(mark, player.makeMove(game.getField(), mark == 'X'));
+            }
+
+            @Override
+            public void ponder(TicTacToe game) {
+                player.ponder(game.isOver() ? PackedPlayer.GAME_OVER : game.getField(), mark == 'X');
+            }
+        };
+    }
+
+    // lets any Player play through this interface, pondering included;
+    // allocates a TicTacToe and a Move per call
+    public static PackedPlayer of(Player player) {
+        if (player instanceof PackedPlayer) {
+            return (PackedPlayer) player;
+        }
+        return new PackedPlayer() {
+            @Override
+            public int makeMove(int field, boolean isX) {
+                Move move = player.makeMove(PackedPlayer.game(field));
+                return (move == null) ? -1 : move.getSector();
+            }
+
+            @Override
+            public void ponder(int field, boolean isX) {
+                player.ponder(PackedPlayer.game(field));
+            }
+        };
+    }
+
+    // the position as a TicTacToe; for GAME_OVER, whose position is not
+    // passed on, a drawn board, so isOver() holds
+    private static TicTacToe game(int field) {
+        TicTacToe game = new TicTacToe();
+        if (field == PackedPlayer.GAME_OVER) {
+            game.setMasks(0x18D, 0x072); // X O X / X O O / O X X
+        } else {
+            game.setMasks(Board.xMask(field), Board.oMask(field));
+        }
+        return game;
+    }
+}
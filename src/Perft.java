@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Counts the complete game tree below a position, to check move generation
+// and win detection against known totals and to time them.
+//
+// java -cp build Perft [position] [threads] [runs]
+//
+// position is a compact string such as "X...O...." (default: the empty
+// board), side to move follows from the piece counts. Every game ends at
+// the first line or on a full board, so from the empty board there are
+// 255168 games: 131184 won by X, 77904 by O and 46080 drawn. The top
+// SPLIT plies are forked on a ForkJoinPool, the subtrees below are walked
+// sequentially.
+public class Perft {
+    private static final int SPLIT = 2; // plies forked as separate tasks
+    private static final long[] EMPTY_NODES = new long[] {
+        1, 9, 72, 504, 3024, 15120, 54720, 148176, 200448, 127872 };
+    private static final long EMPTY_GAMES = 255168, EMPTY_X = 131184, EMPTY_O = 77904, EMPTY_DRAWS = 46080;
+
+    // totals of one subtree; depth is in plies below its root
+    public static class Counts {
+        public final long[] nodes = new long[Board.THREE_SQ + 1];
+        public long xWins, oWins, draws;
+
+        public long games() {
+            return this.xWins + this.oWins + this.draws;
+        }
+
+        public long totalNodes() {
+            return Arrays.stream(this.nodes).sum();
+        }
+
+        // adds `child`, whose root is one ply below this one's
+        void addChild(Counts child) {
+            for (int d = 0; d + 1 < this.nodes.length; d++) {
+                this.nodes[d + 1] += child.nodes[d];
+            }
+            this.xWins += child.xWins;
+            this.oWins += child.oWins;
+            this.draws += child.draws;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Counts)) {
+                return false;
+            }
+            Counts c = (Counts) o;
+            return Arrays.equals(this.nodes, c.nodes) && this.xWins == c.xWins
+                && this.oWins == c.oWins && this.draws == c.draws;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.nodes) ^ Long.hashCode(this.xWins ^ (this.oWins << 20) ^ (this.draws << 40));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("games: %d, X wins: %d, O wins: %d, draws: %d, nodes: %d",
+                this.games(), this.xWins, this.oWins, this.draws, this.totalNodes());
+        }
+    }
+
+
+    public static Counts count(int field) {
+        Counts counts = new Counts();
+        Perft.walk(field, Retrograde.isXToMove(field), 0, counts);
+        return counts;
+    }
+
+    public static Counts count(int field, ForkJoinPool pool) {
+        return pool.invoke(new PerftTask(field, Retrograde.isXToMove(field), 0));
+    }
+
+    private static void walk(int field, boolean isX, int depth, Counts counts) {
+        counts.nodes[depth]++;
+        byte winner = Board.checkWin(field);
+        if (winner == Board.X) {
+            counts.xWins++;
+            return;
+        }
+        if (winner == Board.O) {
+            counts.oWins++;
+            return;
+        }
+        int free = Board.legalMoves(field);
+        if (free == 0) {
+            counts.draws++;
+            return;
+        }
+        byte mark = isX ? Board.X : Board.O;
+        for (; free != 0; free &= free - 1) {
+            Perft.walk(Board.setCell(field, Integer.numberOfTrailingZeros(free), mark), !isX, depth + 1, counts);
+        }
+    }
+
+    private static class PerftTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+
+        private final int field;
+        private final boolean isX;
+        private final int ply; // below the position Perft was asked for
+
+        PerftTask(int field, boolean isX, int ply) {
+            this.field = field;
+            this.isX = isX;
+            this.ply = ply;
+        }
+
+        @Override
+        protected Counts compute() {
+            Counts counts = new Counts();
+            int free = Board.legalMoves(this.field);
+            if (this.ply >= Perft.SPLIT || free == 0 || Board.checkWin(this.field) != Board.EMPTY) {
+                Perft.walk(this.field, this.isX, 0, counts);
+                return counts;
+            }
+
+            byte mark = this.isX ? Board.X : Board.O;
+            PerftTask[] children = new PerftTask[Integer.bitCount(free)];
+            for (int i = 0; free != 0; free &= free - 1, i++) {
+                int child = Board.setCell(this.field, Integer.numberOfTrailingZeros(free), mark);
+                children[i] = new PerftTask(child, !this.isX, this.ply + 1);
+            }
+            RecursiveTask.invokeAll(children);
+            counts.nodes[0] = 1;
+            for (PerftTask child : children) {
+                counts.addChild(child.join());
+            }
+            return counts;
+        }
+    }
+
+
+    public static void main(String[] args) {
+        int field = (args.length >= 1) ? Board.parseCompactString(args[0]) : 0;
+        int threads = (args.length >= 2) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int runs = (args.length >= 3) ? Integer.parseInt(args[2]) : 20;
+        int lead = Integer.bitCount(Board.xMask(field)) - Integer.bitCount(Board.oMask(field));
+        if (lead != 0 && lead != 1) {
+            throw new IllegalArgumentException("not a position of a game: " + Board.toCompactString(field));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Counts sequential = null, parallel = null;
+        long bestSequential = Long.MAX_VALUE, bestParallel = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            sequential = Perft.count(field);
+            bestSequential = Math.min(bestSequential, System.nanoTime() - start);
+            start = System.nanoTime();
+            parallel = Perft.count(field, pool);
+            bestParallel = Math.min(bestParallel, System.nanoTime() - start);
+        }
+        pool.shutdown();
+
+        System.out.println("[Perft] " + Board.toCompactString(field) + ", "
+            + (Retrograde.isXToMove(field) ? 'X' : 'O') + " to move");
+        for (int d = 0; d < parallel.nodes.length && parallel.nodes[d] != 0; d++) {
+            System.out.println(String.format("[Perft] depth %d: %d nodes", d, parallel.nodes[d]));
+        }
+        System.out.println("[Perft] " + parallel);
+        long nodes = parallel.totalNodes();
+        System.out.println(String.format("[Perft] sequential: %d us, %.1f Mnodes/s", bestSequential / 1000,
+            nodes * 1e3 / bestSequential));
+        System.out.println(String.format("[Perft] parallel:   %d us, %.1f Mnodes/s on %d threads", bestParallel / 1000,
+            nodes * 1e3 / bestParallel, threads));
+
+        boolean ok = sequential.equals(parallel);
+        if (field == 0) {
+            ok &= Arrays.equals(parallel.nodes, Perft.EMPTY_NODES) && parallel.games() == Perft.EMPTY_GAMES
+                && parallel.xWins == Perft.EMPTY_X && parallel.oWins == Perft.EMPTY_O && parallel.draws == Perft.EMPTY_DRAWS;
+        }
+        System.out.println("[Perft] " + (ok ? "OK" : "MISMATCH") + ((field == 0) ? " against the known totals" : ""));
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
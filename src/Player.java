@@ -1,3 +1,9 @@
 public interface Player {
     public Move makeMove(TicTacToe game);
+
+    // called after each of this player's moves and once more when the game
+    // is over; engines may think about their next move in the background
+    // until makeMove is called again, and stop when the game is over
+    public default void ponder(TicTacToe game) {
+    }
 }
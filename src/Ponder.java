@@ -0,0 +1,266 @@
+import java.util.List;
+import java.util.function.Function;
+
+// Lets any PackedPlayer think on the opponent's time.
+//
+// java -cp build Ponder [engine] [games] [opponent think ms]
+//
+// After each of the engine's moves, ponder() starts a daemon thread that
+// searches the engine's answer to every reply of the opponent: the one
+// `predictor` expects first, then the others. makeMove() on a pondered
+// position takes that answer (a hit), waiting for its search if it is still
+// running; on any other position it interrupts the pondering (a miss) and
+// searches as usual. The engine never runs two searches at once: makeMove
+// and the next ponder() wait for the pondering thread to end, so engines
+// only have to stop when their thread is interrupted, as MnkStrat and
+// MctsStrat do.
+public class Ponder implements Player, PackedPlayer {
+    private final char mark;
+    private final PackedPlayer engine;
+    private final PackedPlayer predictor;
+
+    // replies pondered so far, guarded by this
+    private final int[] fields = new int[Board.THREE_SQ];
+    private final int[] answers = new int[Board.THREE_SQ];
+    private final long[] nanos = new long[Board.THREE_SQ];
+    private int pondered = 0;
+    private int searching = PackedPlayer.GAME_OVER;
+    private Thread thread;
+
+    private long hits, misses, savedNanos;
+
+
+    // `predictor` plays the opponent's side, it should be cheap
+    public Ponder(char mark, PackedPlayer engine, PackedPlayer predictor) {
+        this.mark = mark;
+        this.engine = engine;
+        this.predictor = predictor;
+    }
+
+    // wraps the players of `factory`, with a perfect predictor
+    public static Function<Character, Player> factory(Function<Character, Player> factory) {
+        return mark -> new Ponder(mark, PackedPlayer.of(factory.apply(mark)),
+            new CStrat(mark == 'X' ? 'O' : 'X', Board.solver()));
+    }
+
+
+    public Move makeMove(TicTacToe game) {
+        return new Move(this.mark, this.makeMove(game.getField(), this.mark == 'X'));
+    }
+
+    public int makeMove(int field, boolean isX) {
+        long start = System.nanoTime();
+        int answer = -1;
+        long searched = 0;
+        synchronized (this) {
+            for (boolean waiting = this.thread != null; waiting; ) {
+                waiting = false;
+                for (int i = 0; i < this.pondered; i++) {
+                    if (this.fields[i] == field) {
+                        answer = this.answers[i];
+                        searched = this.nanos[i];
+                    }
+                }
+                // run() clears `searching` and notifies when it ends; the
+                // timed wait and the liveness check are a second line
+                if (answer < 0 && this.searching == field && this.thread.isAlive()) {
+                    try {
+                        this.wait(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    waiting = true;
+                }
+            }
+        }
+        boolean pondering = this.stop();
+
+        if (answer >= 0) {
+            long saved = Math.max(0, searched - (System.nanoTime() - start));
+            this.hits++;
+            this.savedNanos += saved;
+            if (Metrics.ENABLED) {
+                Metrics.ponder(true, saved);
+            }
+            return answer;
+        }
+        if (pondering) {
+            this.misses++;
+            if (Metrics.ENABLED) {
+                Metrics.ponder(false, 0);
+            }
+        }
+        return this.engine.makeMove(field, isX);
+    }
+
+    public void ponder(TicTacToe game) {
+        this.ponder(game.isOver() ? PackedPlayer.GAME_OVER : game.getField(), this.mark == 'X');
+    }
+
+    public void ponder(int field, boolean isX) {
+        this.stop();
+        if (field == PackedPlayer.GAME_OVER || Board.checkWin(field) != Board.EMPTY) {
+            return;
+        }
+        synchronized (this) {
+            this.pondered = 0;
+            this.thread = Threads.startDaemon("Ponder-" + this.mark, () -> this.run(field, isX));
+        }
+    }
+
+    // interrupts and waits for the pondering thread, true if there was one
+    private boolean stop() {
+        Thread t;
+        synchronized (this) {
+            t = this.thread;
+            this.thread = null;
+        }
+        if (t == null) {
+            return false;
+        }
+        t.interrupt();
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                t.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    // searches the answers to the opponent's replies to `field`
+    private void run(int field, boolean isX) {
+        try {
+            this.search(field, isX);
+        } finally {
+            // also when the engine or the predictor throws, or makeMove
+            // would wait for this search forever
+            synchronized (this) {
+                this.searching = PackedPlayer.GAME_OVER;
+                this.notifyAll();
+            }
+        }
+    }
+
+    private void search(int field, boolean isX) {
+        byte other = isX ? Board.O : Board.X;
+        int guess = this.predictor.makeMove(field, !isX);
+        int replies = Board.legalMoves(field);
+        int first = (guess >= 0 && (replies & (1 << guess)) != 0) ? guess : Integer.numberOfTrailingZeros(replies);
+        for (int rest = replies & ~(1 << first), cell = first; ; cell = Integer.numberOfTrailingZeros(rest), rest &= rest - 1) {
+            int next = Board.setCell(field, cell, other);
+            if (Board.checkWin(next) == Board.EMPTY) {
+                synchronized (this) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    this.searching = next;
+                }
+                long start = System.nanoTime();
+                int answer = this.engine.makeMove(next, isX);
+                long elapsed = System.nanoTime() - start;
+                synchronized (this) {
+                    // an interrupted search is cut short, its move is not kept
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    this.fields[this.pondered] = next;
+                    this.answers[this.pondered] = answer;
+                    this.nanos[this.pondered] = elapsed;
+                    this.pondered++;
+                    this.searching = PackedPlayer.GAME_OVER;
+                    this.notifyAll();
+                }
+            }
+            if (rest == 0) {
+                break;
+            }
+        }
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    public long getSavedNanos() {
+        return this.savedNanos;
+    }
+
+
+    // times the moves of a player
+    private static class Timed implements Player {
+        final Player player;
+        long moves, nanos;
+
+        Timed(Player player) {
+            this.player = player;
+        }
+
+        public Move makeMove(TicTacToe game) {
+            long start = System.nanoTime();
+            Move move = this.player.makeMove(game);
+            this.nanos += System.nanoTime() - start;
+            this.moves++;
+            return move;
+        }
+
+        public void ponder(TicTacToe game) {
+            this.player.ponder(game);
+        }
+    }
+
+    // an opponent that takes `millis` to answer, like a person would
+    private static Player slow(Player player, long millis) {
+        return game -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return player.makeMove(game);
+        };
+    }
+
+    public static void main(String[] args) {
+        String name = (args.length >= 1) ? args[0] : "mcts";
+        int games = (args.length >= 2) ? Integer.parseInt(args[1]) : 50;
+        long think = (args.length >= 3) ? Long.parseLong(args[2]) : 20;
+        Board.precompute();
+
+        Function<Character, Player> plain = Simulation.factory(name);
+        Function<Character, Player> pondering = Ponder.factory(plain);
+        for (Function<Character, Player> factory : List.of(plain, pondering)) {
+            Timed x = new Timed(factory.apply('X'));
+            Timed o = new Timed(factory.apply('O'));
+            Player opponentX = Ponder.slow(new JStrat('X'), think);
+            Player opponentO = Ponder.slow(new JStrat('O'), think);
+            for (int g = 0; g < games; g++) {
+                new GameEngine(x, opponentO).play();
+                new GameEngine(opponentX, o).play();
+            }
+
+            String line = String.format("[Ponder] %-6s %s: %d moves, mean %.0f us per move", name,
+                factory == plain ? "plain   " : "pondering", x.moves + o.moves, (x.nanos + o.nanos) / 1e3 / (x.moves + o.moves));
+            if (x.player instanceof Ponder) {
+                Ponder px = (Ponder) x.player, po = (Ponder) o.player;
+                long hits = px.getHits() + po.getHits(), misses = px.getMisses() + po.getMisses();
+                line += String.format(", %d hits, %d misses (%.1f%% hits), saved %.0f us per hit",
+                    hits, misses, 100.0 * hits / Math.max(1, hits + misses),
+                    (px.getSavedNanos() + po.getSavedNanos()) / 1e3 / Math.max(1, hits));
+            }
+            System.out.println(line);
+        }
+        System.out.println("[Ponder] " + Metrics.INSTANCE);
+    }
+}
@@ -0,0 +1,19 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+// Plays a uniformly random viable move, as a baseline for simulations.
+public class RandomPlayer implements Player, PackedPlayer {
+    private char mark;
+
+    public RandomPlayer(char mark) {
+        this.mark = mark;
+    }
+
+    public Move makeMove(TicTacToe game) {
+        return new Move(this.mark, this.makeMove(game.getField(), this.mark == 'X'));
+    }
+
+    public int makeMove(int field, boolean isX) {
+        int free = Board.legalMoves(field);
+        return Board.nthMove(free, ThreadLocalRandom.current().nextInt(Integer.bitCount(free)));
+    }
+}
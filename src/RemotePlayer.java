@@ -0,0 +1,55 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.SocketTimeoutException;
+
+// A Player on the other end of a GameServer connection.
+//
+// Every turn it sends "BOARD <cells>" and "TURN" and waits for "MOVE <sector>"
+// for at most the socket's read timeout. A player that times out or hangs up
+// makes no more moves, so GameEngine lets it forfeit right away.
+public class RemotePlayer implements Player {
+    private final char mark;
+    private final BufferedReader in;
+    private final Writer out;
+    private boolean gone = false;
+
+    public RemotePlayer(char mark, BufferedReader in, Writer out) {
+        this.mark = mark;
+        this.in = in;
+        this.out = out;
+    }
+
+    public Move makeMove(TicTacToe game) {
+        if (this.gone) {
+            return null;
+        }
+
+        try {
+            this.out.write("BOARD " + Board.toCompactString(game.getField()) + "\nTURN\n");
+            this.out.flush();
+            String line = this.in.readLine();
+            if (line == null) {
+                this.gone = true;
+                return null;
+            }
+            if (!line.startsWith("MOVE ")) {
+                this.out.write("ERROR expected MOVE <sector>\n");
+                return null;
+            }
+            return new Move(this.mark, Integer.parseInt(line.substring(5).trim()));
+        } catch (SocketTimeoutException e) {
+            this.gone = true;
+            return null;
+        } catch (IOException e) {
+            this.gone = true;
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public boolean isGone() {
+        return this.gone;
+    }
+}
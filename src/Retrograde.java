@@ -0,0 +1,253 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Retrograde solver: outcome and distance to the end for every legal
+// position, without recursion.
+//
+// The legal positions are enumerated forward from the empty board, one
+// level per piece count and one canonical field per symmetry class. They
+// are then solved backwards from the full board: every position of a level
+// only looks at its children on the level above, so a level is solved in
+// parallel once the one above is done.
+//
+// An entry is one byte per MinimaxTable class, the outcome in bits 0-1 and
+// the plies to the end in bits 2-5, where the winner hurries and the loser
+// delays. Side to move follows from the piece counts; classes that are not
+// reachable keep UNKNOWN. The best moves of every position, in every
+// orientation, are kept alongside so bestMovesMask is a single load.
+public class Retrograde {
+    public static final byte UNKNOWN = 0;
+    private static final int SPLIT = 128; // positions per fork-join leaf
+
+    private final byte[] entries = new byte[MinimaxTable.NUM_CLASSES];
+    private final int[][] levels = new int[Board.THREE_SQ + 1][];
+    private final short[] bestMoves = new short[MinimaxTable.NUM_POSITIONS]; // by base3
+
+
+    private static class Holder {
+        static final Retrograde SHARED = Retrograde.solve(ForkJoinPool.commonPool());
+    }
+
+    private static CompletableFuture<Retrograde> sharedAsync;
+
+    // solved once per JVM on first use
+    public static Retrograde shared() {
+        return Holder.SHARED;
+    }
+
+    // shared(), solved on a background daemon thread
+    public static synchronized CompletableFuture<Retrograde> sharedAsync() {
+        if (Retrograde.sharedAsync == null) {
+            CompletableFuture<Retrograde> future = new CompletableFuture<>();
+            Threads.startDaemon("Retrograde-warmup", () -> {
+                try {
+                    future.complete(Retrograde.shared());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            Retrograde.sharedAsync = future;
+        }
+        return Retrograde.sharedAsync;
+    }
+
+    public static Retrograde solve(ForkJoinPool pool) {
+        Retrograde r = new Retrograde();
+        r.enumerate();
+        for (int n = Board.THREE_SQ; n >= 0; n--) {
+            int[] level = r.levels[n];
+            pool.invoke(new LevelTask(r, level, 0, level.length));
+        }
+        for (int rank = 0; rank < MinimaxTable.NUM_POSITIONS; rank++) {
+            r.bestMoves[rank] = (short) r.bestMovesMaskSearch(MinimaxTable.fromBase3(rank));
+        }
+        return r;
+    }
+
+
+    public static int canonical(int field) {
+        int best = field;
+        int bestRank = MinimaxTable.base3(field);
+        for (int[] sym : MinimaxTable.SYMMETRIES) {
+            int t = MinimaxTable.transform(field, sym);
+            int rank = MinimaxTable.base3(t);
+            if (rank < bestRank) {
+                best = t;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    private void enumerate() {
+        boolean[] seen = new boolean[MinimaxTable.NUM_CLASSES];
+        int[] level = new int[] { 0 };
+        seen[MinimaxTable.classRank(0)] = true;
+        for (int n = 0; n <= Board.THREE_SQ; n++) {
+            this.levels[n] = level;
+            int[] next = new int[level.length * (Board.THREE_SQ - n)];
+            int size = 0;
+            byte mark = (n % 2 == 0) ? Board.X : Board.O;
+            for (int field : level) {
+                if (Board.checkWin(field) != Board.EMPTY) {
+                    continue;
+                }
+                for (int free = Board.legalMoves(field); free != 0; free &= free - 1) {
+                    int child = Board.setCell(field, Integer.numberOfTrailingZeros(free), mark);
+                    int rank = MinimaxTable.classRank(child);
+                    if (!seen[rank]) {
+                        seen[rank] = true;
+                        next[size++] = Retrograde.canonical(child);
+                    }
+                }
+            }
+            level = Arrays.copyOf(next, size);
+        }
+    }
+
+    private static class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Retrograde r;
+        private final int[] level;
+        private final int from, to;
+
+        LevelTask(Retrograde r, int[] level, int from, int to) {
+            this.r = r;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > Retrograde.SPLIT) {
+                int mid = (this.from + this.to) >>> 1;
+                RecursiveAction.invokeAll(new LevelTask(this.r, this.level, this.from, mid),
+                    new LevelTask(this.r, this.level, mid, this.to));
+                return;
+            }
+            for (int i = this.from; i < this.to; i++) {
+                int field = this.level[i];
+                this.r.entries[MinimaxTable.classRank(field)] = this.r.solveOne(field);
+            }
+        }
+    }
+
+    // children are solved already
+    private byte solveOne(int field) {
+        byte winner = Board.checkWin(field);
+        if (winner != Board.EMPTY) {
+            return Retrograde.pack(winner, 0);
+        }
+        byte best = this.bestChild(field);
+        return Retrograde.pack(Retrograde.outcome(best), Retrograde.distance(best) + 1);
+    }
+
+    // the entry of the best child, see rank()
+    private byte bestChild(int field) {
+        boolean isX = Retrograde.isXToMove(field);
+        byte mark = isX ? Board.X : Board.O;
+        byte best = Retrograde.UNKNOWN;
+        int bestRank = -1;
+        for (int free = Board.legalMoves(field); free != 0; free &= free - 1) {
+            byte child = this.entries[MinimaxTable.classRank(Board.setCell(field, Integer.numberOfTrailingZeros(free), mark))];
+            int rank = Retrograde.rank(child, mark);
+            if (rank > bestRank) {
+                best = child;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    // how much the side playing `mark` likes a child: fast wins over slow
+    // wins over draws over slow losses over fast losses
+    private static int rank(byte entry, byte mark) {
+        byte outcome = Retrograde.outcome(entry);
+        int distance = Retrograde.distance(entry);
+        if (outcome == mark) {
+            return 64 - distance;
+        }
+        return (outcome == Board.DRAW) ? 32 : distance;
+    }
+
+    private static byte pack(byte outcome, int distance) {
+        return (byte) (outcome | (distance << 2));
+    }
+
+    public static byte outcome(byte entry) {
+        return (byte) (entry & Board.MASK);
+    }
+
+    public static int distance(byte entry) {
+        return (entry >> 2) & 0xF;
+    }
+
+    public static boolean isXToMove(int field) {
+        return Integer.bitCount(Board.xMask(field)) == Integer.bitCount(Board.oMask(field));
+    }
+
+
+    // UNKNOWN for positions that cannot occur in a game
+    public byte entry(int field) {
+        return this.entries[MinimaxTable.classRank(field)];
+    }
+
+    public int levelSize(int pieces) {
+        return this.levels[pieces].length;
+    }
+
+    // 9-bit mask of the moves with the best outcome, the fastest win or
+    // the slowest loss; 0 for unknown or finished positions
+    public int bestMovesMask(int field) {
+        return this.bestMoves[MinimaxTable.base3(field)];
+    }
+
+    private int bestMovesMaskSearch(int field) {
+        if (this.entry(field) == Retrograde.UNKNOWN || Board.checkWin(field) != Board.EMPTY) {
+            return 0;
+        }
+        byte mark = Retrograde.isXToMove(field) ? Board.X : Board.O;
+        int bestRank = Retrograde.rank(this.bestChild(field), mark);
+        int moves = 0;
+        for (int free = Board.legalMoves(field); free != 0; free &= free - 1) {
+            int i = Integer.numberOfTrailingZeros(free);
+            if (Retrograde.rank(this.entry(Board.setCell(field, i, mark)), mark) == bestRank) {
+                moves |= 1 << i;
+            }
+        }
+        return moves;
+    }
+
+
+    public static void main(String[] args) {
+        // java -cp build Retrograde
+        long start = System.nanoTime();
+        Retrograde r = Retrograde.solve(ForkJoinPool.commonPool());
+        long elapsed = System.nanoTime() - start;
+        int total = 0;
+        for (int n = 0; n <= Board.THREE_SQ; n++) {
+            total += r.levelSize(n);
+        }
+        System.out.println("[Retrograde] " + total + " classes in " + elapsed / 1000 + " us on "
+            + ForkJoinPool.commonPool().getParallelism() + " workers");
+
+        // every reachable position against the recursive Solver
+        int mismatches = 0;
+        for (int n = 0; n <= Board.THREE_SQ; n++) {
+            for (int field : r.levels[n]) {
+                if (Retrograde.outcome(r.entry(field)) != Board.minimax(field, Retrograde.isXToMove(field))) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("[Retrograde] " + mismatches + " mismatches against Solver");
+
+        byte empty = r.entry(0);
+        System.out.println("[Retrograde] empty board: " + Board.symbol(Retrograde.outcome(empty))
+            + " in " + Retrograde.distance(empty) + " plies");
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Generates labelled training positions from self-play.
+//
+// java -cp build SelfPlay [options] out-prefix
+//   -x / -o NAME   players, see Simulation (default: cstrat / jstrat)
+//   -games N       games to play (default: 1000000)
+//   -threads N     producer threads (default: all cores)
+//   -queue N       batches in flight between producers and the writer (default: 64)
+//   -shard N       records per shard file (default: 16M)
+//   -gzip          compress the shards
+//   -dedup         one record per symmetry class and side to move
+// java -cp build SelfPlay cat shard...   prints records as CSV
+//
+// Producers play games and label every position before a move with its
+// minimax value, its best moves and the game's result. Records go through
+// a bounded queue in batches to a single writer, so producers block once the
+// writer falls behind and memory stays at `queue` batches however many
+// records are written.
+//
+// Shards are named out-prefix-00000.ttts (.gz with -gzip) and hold
+//   int  MAGIC
+//   int  VERSION
+//   then RECORD_BYTES big endian bytes per record:
+//   bits  0-17  the Board field
+//   bit     18  1 if X is to move
+//   bits 19-20  minimax value
+//   bits 21-29  best moves (bit 21 + i = sector i)
+//   bits 30-31  the winner of the game
+//   bits 32-35  plies played before the position
+public class SelfPlay {
+    public static final int MAGIC = 0x54545453; // "TTTS"
+    public static final int VERSION = 1;
+    public static final int RECORD_BYTES = 5;
+    private static final int BATCH = 4096;
+    private static final long[] DONE = new long[0];
+    private static final VarHandle SEEN = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Function<Character, Player> xFactory;
+    private final Function<Character, Player> oFactory;
+    private final BlockingQueue<long[]> queue;
+    private final boolean dedup;
+    // one bit per MinimaxTable index, set once its first record is queued
+    private final long[] seen = new long[(2 * MinimaxTable.NUM_CLASSES + Long.SIZE - 1) / Long.SIZE];
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+
+    public SelfPlay(Function<Character, Player> xFactory, Function<Character, Player> oFactory, int queue,
+                    boolean dedup) {
+        this.xFactory = xFactory;
+        this.oFactory = oFactory;
+        this.queue = new ArrayBlockingQueue<>(queue);
+        this.dedup = dedup;
+    }
+
+
+    public static long record(int field, boolean isX, byte minimax, int bestMoves, byte winner, int ply) {
+        return field | (isX ? 1L << 18 : 0) | ((long) minimax << 19) | ((long) bestMoves << 21)
+            | ((long) winner << 30) | ((long) ply << 32);
+    }
+
+    // true for the first record of its symmetry class and side to move
+    private boolean firstOfClass(int field, boolean isX) {
+        int index = MinimaxTable.index(field, isX);
+        long bit = 1L << (index % Long.SIZE);
+        return ((long) SelfPlay.SEEN.getAndBitwiseOr(this.seen, index / Long.SIZE, bit) & bit) == 0;
+    }
+
+    private void put(long[] batch) throws InterruptedException {
+        if (!this.queue.offer(batch)) {
+            long start = System.nanoTime();
+            this.queue.put(batch);
+            this.blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private void produce(long games) throws InterruptedException {
+        PackedPlayer x = PackedPlayer.of(this.xFactory.apply('X'));
+        PackedPlayer o = PackedPlayer.of(this.oFactory.apply('O'));
+        Solver solver = Board.solver();
+        int[] moves = new int[Board.THREE_SQ];
+        long[] batch = new long[SelfPlay.BATCH];
+        int n = 0;
+        for (long g = 0; g < games; g++) {
+            int result = GameEngine.play(x, o, moves);
+            byte winner = GameEngine.winner(result);
+            int plies = GameEngine.plies(result);
+
+            int field = 0;
+            for (int ply = 0; ply < plies; ply++) {
+                boolean isX = ply % 2 == 0;
+                if (!this.dedup || this.firstOfClass(field, isX)) {
+                    batch[n++] = SelfPlay.record(field, isX, solver.minimax(field, isX),
+                        solver.bestMovesMask(field, isX), winner, ply);
+                    if (n == batch.length) {
+                        this.put(batch);
+                        this.positions.add(n);
+                        batch = new long[SelfPlay.BATCH];
+                        n = 0;
+                    }
+                } else {
+                    this.duplicates.increment();
+                }
+                field = Board.setCell(field, moves[ply], isX ? Board.X : Board.O);
+            }
+        }
+        if (n > 0) {
+            long[] last = new long[n];
+            System.arraycopy(batch, 0, last, 0, n);
+            this.put(last);
+            this.positions.add(n);
+        }
+    }
+
+    // writes batches until DONE, starting a new shard every `shardRecords`;
+    // returns the number of bytes written
+    private long write(String prefix, long shardRecords, boolean gzip) throws IOException, InterruptedException {
+        DataOutputStream out = null;
+        int shard = 0;
+        long inShard = 0;
+        long bytes = 0;
+        byte[] buf = new byte[SelfPlay.BATCH * SelfPlay.RECORD_BYTES];
+        for (long[] batch = this.queue.take(); batch != SelfPlay.DONE; batch = this.queue.take()) {
+            for (int from = 0; from < batch.length; ) {
+                if (out == null || inShard == shardRecords) {
+                    if (out != null) {
+                        out.close();
+                    }
+                    String name = String.format("%s-%05d.ttts%s", prefix, shard++, gzip ? ".gz" : "");
+                    OutputStream os = new FileOutputStream(name);
+                    out = new DataOutputStream(new BufferedOutputStream(gzip ? new GZIPOutputStream(os, 1 << 16) : os, 1 << 16));
+                    out.writeInt(SelfPlay.MAGIC);
+                    out.writeInt(SelfPlay.VERSION);
+                    bytes += 2 * Integer.BYTES;
+                    inShard = 0;
+                }
+
+                int n = (int) Math.min(batch.length - from, shardRecords - inShard);
+                int len = 0;
+                for (int i = from; i < from + n; i++) {
+                    long r = batch[i];
+                    for (int b = SelfPlay.RECORD_BYTES - 1; b >= 0; b--) {
+                        buf[len++] = (byte) (r >>> (8 * b));
+                    }
+                }
+                out.write(buf, 0, len);
+                bytes += len;
+                inShard += n;
+                from += n;
+            }
+        }
+        if (out != null) {
+            out.close();
+        }
+        return bytes;
+    }
+
+    public void run(long games, int threads, String prefix, long shardRecords, boolean gzip) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        // producers and the writer, so whichever fails first is seen at once:
+        // with the writer gone nothing drains the queue and producers block
+        CompletionService<Long> tasks = new ExecutorCompletionService<>(pool);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long share = games / threads + (t < games % threads ? 1 : 0);
+            tasks.submit(() -> {
+                this.produce(share);
+                return 0L;
+            });
+        }
+        Future<Long> writer = tasks.submit(() -> this.write(prefix, shardRecords, gzip));
+        long bytes;
+        try {
+            for (int producing = threads; producing > 0; ) {
+                Future<Long> f = tasks.take();
+                f.get();
+                if (f == writer) {
+                    throw new IllegalStateException("writer stopped before the producers");
+                }
+                producing--;
+            }
+            while (!this.queue.offer(SelfPlay.DONE, 100, TimeUnit.MILLISECONDS)) {
+                if (writer.isDone()) {
+                    writer.get();
+                    throw new IllegalStateException("writer stopped before the producers");
+                }
+            }
+            bytes = writer.get();
+        } finally {
+            // interrupts producers blocked on a queue nobody drains
+            pool.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long n = this.positions.sum();
+        System.err.println(String.format("[SelfPlay] %d games, %d records (%d duplicates dropped), %d bytes in %d ms",
+            games, n, this.duplicates.sum(), bytes, elapsed / 1000000));
+        System.err.println(String.format("[SelfPlay] %.0f records/s, producers blocked for %d ms in total",
+            n * 1e9 / elapsed, this.blockedNanos.sum() / 1000000));
+    }
+
+
+    private static void cat(String[] files) throws IOException {
+        System.out.println("field,to_move,minimax,best_moves,winner,ply");
+        for (String file : files) {
+            InputStream is = new FileInputStream(file);
+            if (file.endsWith(".gz")) {
+                is = new GZIPInputStream(is, 1 << 16);
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16))) {
+                if (in.readInt() != SelfPlay.MAGIC || in.readInt() != SelfPlay.VERSION) {
+                    throw new IOException(file + " is not a version " + SelfPlay.VERSION + " shard");
+                }
+                byte[] rec = new byte[SelfPlay.RECORD_BYTES];
+                for (;;) {
+                    try {
+                        in.readFully(rec);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    long r = 0;
+                    for (byte b : rec) {
+                        r = (r << 8) | (b & 0xFF);
+                    }
+                    String best = "";
+                    for (int i = 0; i < Board.THREE_SQ; i++) {
+                        if ((r & (1L << (21 + i))) != 0) {
+                            best += i;
+                        }
+                    }
+                    System.out.println(Board.toCompactString((int) (r & 0x3FFFF)) + ","
+                        + (((r >> 18) & 1) != 0 ? 'X' : 'O') + ","
+                        + Board.symbol((byte) ((r >> 19) & Board.MASK)) + "," + best + ","
+                        + Board.symbol((byte) ((r >> 30) & Board.MASK)) + "," + ((r >> 32) & 0xF));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals("cat")) {
+            String[] files = new String[args.length - 1];
+            System.arraycopy(args, 1, files, 0, files.length);
+            SelfPlay.cat(files);
+            return;
+        }
+
+        String x = "cstrat", o = "jstrat", prefix = null;
+        long games = 1000000, shard = 16 << 20;
+        int threads = Runtime.getRuntime().availableProcessors(), queue = 64;
+        boolean gzip = false, dedup = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-x": x = args[++i]; break;
+                case "-o": o = args[++i]; break;
+                case "-games": games = Long.parseLong(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-queue": queue = Integer.parseInt(args[++i]); break;
+                case "-shard": shard = Long.parseLong(args[++i]); break;
+                case "-gzip": gzip = true; break;
+                case "-dedup": dedup = true; break;
+                default: prefix = args[i];
+            }
+        }
+        if (prefix == null) {
+            System.err.println("usage: SelfPlay [-x NAME] [-o NAME] [-games N] [-threads N] [-queue N] [-shard N] [-gzip] [-dedup] out-prefix");
+            System.exit(2);
+        }
+
+        Board.precompute();
+        new SelfPlay(Simulation.factory(x), Simulation.factory(o), queue, dedup).run(games, threads, prefix, shard, gzip);
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// Plays many headless games across all cores and reports throughput and
+// the outcome distribution.
+//
+// java -cp build Simulation [playerX] [playerO] [games] [threads]
+//
+// players: cstrat, jstrat, mcts, mnk, random
+public class Simulation {
+    // per thread counts, merged at the end
+    private static class Stats {
+        long xWins, oWins, draws, forfeits, plies;
+
+        void add(int result) {
+            byte winner = GameEngine.winner(result);
+            if (winner == Board.X) {
+                this.xWins++;
+            } else if (winner == Board.O) {
+                this.oWins++;
+            } else {
+                this.draws++;
+            }
+            if (GameEngine.isForfeit(result)) {
+                this.forfeits++;
+            }
+            this.plies += GameEngine.plies(result);
+        }
+
+        void add(Stats s) {
+            this.xWins += s.xWins;
+            this.oWins += s.oWins;
+            this.draws += s.draws;
+            this.forfeits += s.forfeits;
+            this.plies += s.plies;
+        }
+
+        long games() {
+            return this.xWins + this.oWins + this.draws;
+        }
+    }
+
+
+    // Players are stateful, so every thread builds its own. "ponder-NAME"
+    // is NAME thinking on the opponent's time, see Ponder.
+    public static Function<Character, Player> factory(String name) {
+        if (name.startsWith("ponder-")) {
+            return Ponder.factory(Simulation.factory(name.substring("ponder-".length())));
+        }
+        switch (name) {
+            case "cstrat":
+                // sessions start at once, see CStrat(char)
+                Board.solver().warmUp();
+                CompletableFuture<Retrograde> retrograde = Retrograde.sharedAsync();
+                return mark -> new CStrat(mark, Board.solver(), retrograde);
+            case "jstrat":
+                return mark -> new JStrat(mark);
+            case "mnk":
+                return mark -> new MnkStrat(mark);
+            case "mcts":
+                // single threaded, Simulation already runs one game per core
+                return mark -> new MctsStrat(mark, new MnkBoard(Board.THREE, Board.THREE, Board.THREE), 2000, 0, 1, 1, true);
+            case "random":
+                return mark -> new RandomPlayer(mark);
+            default:
+                throw new IllegalArgumentException("unknown player " + name);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Function<Character, Player> xFactory = Simulation.factory(args.length >= 1 ? args[0] : "cstrat");
+        Function<Character, Player> oFactory = Simulation.factory(args.length >= 2 ? args[1] : "random");
+        long games = (args.length >= 3) ? Long.parseLong(args[2]) : 1000000;
+        int threads = (args.length >= 4) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Stats>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long share = games / threads + (t < games % threads ? 1 : 0);
+            futures.add(pool.submit(() -> {
+                // packed players play without allocating, others through an adapter
+                PackedPlayer x = PackedPlayer.of(xFactory.apply('X'));
+                PackedPlayer o = PackedPlayer.of(oFactory.apply('O'));
+                int[] moves = new int[Board.THREE_SQ];
+                Stats stats = new Stats();
+                for (long g = 0; g < share; g++) {
+                    stats.add(GameEngine.play(x, o, moves));
+                }
+                return stats;
+            }));
+        }
+
+        Stats total = new Stats();
+        for (Future<Stats> f : futures) {
+            total.add(f.get());
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        long n = total.games();
+        System.out.println(n + " games on " + threads + " threads in " + elapsed / 1000000 + " ms"
+            + String.format(" (%.0f games/s)", n * 1e9 / elapsed));
+        System.out.println(String.format("X wins: %d (%.2f%%), O wins: %d (%.2f%%), draws: %d (%.2f%%)",
+            total.xWins, 100.0 * total.xWins / n, total.oWins, 100.0 * total.oWins / n,
+            total.draws, 100.0 * total.draws / n));
+        System.out.println(String.format("forfeits: %d, avg plies: %.2f", total.forfeits, (double) total.plies / n));
+        System.out.println(Metrics.INSTANCE);
+    }
+}
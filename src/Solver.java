@@ -0,0 +1,265 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Minimax engine over packed Board fields.
+//
+// Each Solver owns its table, so independent engines never see each other's
+// state. A single Solver may be shared between threads: results are memoised
+// with an atomic OR into the table, and two threads solving the same position
+// store the same bits.
+//
+// Once precomputed, a Solver also keeps the answer for every position in a
+// move table, so picking a move needs no child lookups. The table has an
+// entry per symmetry class like MinimaxTable, in the orientation of the
+// class's canonical field, and answers are turned back to the queried one.
+public class Solver {
+    private static final byte NOT_COMPUTED = 0;
+    private static final int SPLIT_DEPTH = 2; // plies solved as separate fork-join tasks
+
+    private volatile MinimaxTable table = new MinimaxTable();
+    private volatile boolean didPrecompute = false;
+    // [class << 1 | X to move]: bits 0-8 the best moves, bits 9-26 the value
+    // of every move as a packed field (EMPTY for taken cells), both for the
+    // canonical field; 0 for finished and unreachable positions, and for
+    // all of them before precompute()
+    private volatile int[] moves;
+    private final AtomicReference<CompletableFuture<Solver>> warmUp = new AtomicReference<>();
+
+
+    public MinimaxTable table() {
+        return this.table;
+    }
+
+    // precompute() on a background daemon thread, returns at once. Queries
+    // made while it runs solve only the positions they reach, into the same
+    // table, so callers never wait for the whole game to be solved.
+    public CompletableFuture<Solver> warmUp() {
+        CompletableFuture<Solver> future = this.warmUp.get();
+        if (future == null) {
+            CompletableFuture<Solver> mine = new CompletableFuture<>();
+            if (this.warmUp.compareAndSet(null, mine)) {
+                Threads.startDaemon("Solver-warmup", () -> {
+                    try {
+                        this.precompute();
+                        mine.complete(this);
+                    } catch (Throwable e) {
+                        mine.completeExceptionally(e);
+                    }
+                });
+            }
+            future = this.warmUp.get();
+        }
+        return future;
+    }
+
+    public boolean isReady() {
+        return this.didPrecompute;
+    }
+
+    // serves the table from the tablebase file if there is a usable one,
+    // solves the game otherwise
+    public synchronized void precompute() {
+        if (this.didPrecompute) {
+            return;
+        }
+
+        Metrics.PrecomputeEvent event = new Metrics.PrecomputeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        MinimaxTable mapped = Tablebase.open(Paths.get(Tablebase.DEFAULT_PATH));
+        if (mapped != null) {
+            this.table = mapped;
+        } else {
+            this.solve(ForkJoinPool.commonPool());
+        }
+        this.moves = this.buildMoves();
+        this.didPrecompute = true;
+        if (Metrics.ENABLED) {
+            Metrics.precompute(System.nanoTime() - start);
+        }
+        event.source = (mapped != null) ? "tablebase" : "solve";
+        event.commit();
+    }
+
+    public void solve(ForkJoinPool pool) {
+        pool.invoke(new SolveTask(0, true, 0));
+        pool.invoke(new SolveTask(0, false, 0));
+    }
+
+
+    // one entry per class of reachable positions, from the solved table
+    private int[] buildMoves() {
+        int[] moves = new int[2 * MinimaxTable.NUM_CLASSES];
+        for (int rank = 0; rank < MinimaxTable.NUM_POSITIONS; rank++) {
+            int field = MinimaxTable.fromBase3(rank);
+            int key = MinimaxTable.classAndSymmetry(field);
+            if ((key & 7) != 0) {
+                continue; // not the canonical field of its class
+            }
+            int lead = Integer.bitCount(Board.xMask(field)) - Integer.bitCount(Board.oMask(field));
+            if ((lead != 0 && lead != 1) || Board.checkWin(field) != Board.EMPTY) {
+                continue;
+            }
+            boolean isX = lead == 0;
+            byte mark = isX ? Board.X : Board.O;
+            byte best = this.lookup(field, isX);
+            int mask = 0, values = 0;
+            for (int free = Board.legalMoves(field); free != 0; free &= free - 1) {
+                int i = Integer.numberOfTrailingZeros(free);
+                byte value = this.lookup(field | (mark << (2 * i)), !isX);
+                values |= value << (2 * i);
+                if (value == best) {
+                    mask |= 1 << i;
+                }
+            }
+            moves[((key >>> 3) << 1) | (isX ? 1 : 0)] = mask | (values << Board.THREE_SQ);
+        }
+        return moves;
+    }
+
+    public byte minimax(int field, boolean isX) {
+        if (Metrics.ENABLED) {
+            Metrics.lookups(1);
+        }
+        return this.lookup(field, isX);
+    }
+
+    // minimax without counting the lookup, callers count their lookups in
+    // one go to keep the counters off the table hit path
+    private byte lookup(int field, boolean isX) {
+        MinimaxTable table = this.table;
+        int key = MinimaxTable.index(field, isX);
+        byte minimax = table.get(key);
+        if (minimax == Solver.NOT_COMPUTED) {
+            if (Metrics.ENABLED) {
+                Metrics.miss();
+            }
+            minimax = Board.checkWin(field);
+            if (minimax == Board.EMPTY) {
+                minimax = this.minimaxRec(field, isX);
+                table.put(key, minimax);
+            } else if (!Board.hasLine(field, minimax == Board.X ? Board.O : Board.X)) {
+                // (illegal) positions with a line for both sides are not stored,
+                // checkWin would not agree on all of their symmetric variants
+                table.put(key, minimax);
+            }
+        }
+        return minimax;
+    }
+
+    private byte minimaxRec(int field, boolean isX) {
+        if (Metrics.ENABLED) {
+            Metrics.node();
+            Metrics.lookups(Integer.bitCount(Board.legalMoves(field)));
+        }
+        byte mark = isX ? Board.X : Board.O;
+        byte best = isX ? Board.O : Board.X;
+        for (int i = 0; i < Board.THREE_SQ; i++) {
+            if (((field >> (2 * i)) & Board.MASK) != Board.EMPTY) {
+                continue;
+            }
+
+            best = Board.better(isX, this.lookup(field | (mark << (2 * i)), !isX), best);
+        }
+
+        return best;
+    }
+
+    // 9-bit mask (bit i = cell i) of the moves that keep the minimax value;
+    // one load from the move table once precomputed
+    public int bestMovesMask(int field, boolean isX) {
+        int[] moves = this.moves;
+        if (moves != null) {
+            int key = MinimaxTable.classAndSymmetry(field);
+            int canonical = moves[((key >>> 3) << 1) | (isX ? 1 : 0)] & 0x1FF;
+            if (canonical != 0) {
+                if (Metrics.ENABLED) {
+                    Metrics.bestMoves(0);
+                }
+                // cell c of the canonical field is cell inverse[c] here
+                int[] inverse = MinimaxTable.INVERSES[key & 7];
+                int mask = 0;
+                for (; canonical != 0; canonical &= canonical - 1) {
+                    mask |= 1 << inverse[Integer.numberOfTrailingZeros(canonical)];
+                }
+                return mask;
+            }
+        }
+        return this.bestMovesMaskSearch(field, isX);
+    }
+
+    // bestMovesMask from the minimax values of the children, for positions
+    // outside the move table
+    public int bestMovesMaskSearch(int field, boolean isX) {
+        int moves = 0;
+        int free = Board.legalMoves(field);
+        if (Metrics.ENABLED) {
+            Metrics.bestMoves(1 + Integer.bitCount(free));
+        }
+        byte bestRet = this.lookup(field, isX);
+        byte mark = isX ? Board.X : Board.O;
+        for (; free != 0; free &= free - 1) {
+            int i = Integer.numberOfTrailingZeros(free);
+            if (this.lookup(field | (mark << (2 * i)), !isX) == bestRet) {
+                moves |= 1 << i;
+            }
+        }
+        return moves;
+    }
+
+    // the minimax value after each move as a packed field, cell i holding
+    // the value of playing i and EMPTY for taken cells; -1 if the position
+    // is not in the move table
+    public int moveValues(int field, boolean isX) {
+        int[] moves = this.moves;
+        int key = MinimaxTable.classAndSymmetry(field);
+        int entry = (moves != null) ? moves[((key >>> 3) << 1) | (isX ? 1 : 0)] : 0;
+        return (entry != 0) ? MinimaxTable.transform(entry >>> Board.THREE_SQ, MinimaxTable.INVERSES[key & 7]) : -1;
+    }
+
+    public List<Integer> bestMoves(int field, boolean isX) {
+        List<Integer> moves = new ArrayList<>(9);
+        for (int mask = this.bestMovesMask(field, isX); mask != 0; mask &= mask - 1) {
+            moves.add(Integer.numberOfTrailingZeros(mask));
+        }
+        return moves;
+    }
+
+
+    // solves the first SPLIT_DEPTH plies as one task per child, the subtrees
+    // below sequentially; children are memoised, so the final minimax call
+    // of a task only combines table hits
+    private class SolveTask extends RecursiveTask<Byte> {
+        private static final long serialVersionUID = 1L;
+
+        private final int field;
+        private final boolean isX;
+        private final int depth;
+
+        public SolveTask(int field, boolean isX, int depth) {
+            this.field = field;
+            this.isX = isX;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Byte compute() {
+            if (this.depth < Solver.SPLIT_DEPTH && Board.checkWin(this.field) == Board.EMPTY) {
+                byte mark = this.isX ? Board.X : Board.O;
+                List<SolveTask> tasks = new ArrayList<>(9);
+                for (int i = 0; i < Board.THREE_SQ; i++) {
+                    if (((this.field >> (2 * i)) & Board.MASK) == Board.EMPTY) {
+                        tasks.add(new SolveTask(this.field | (mark << (2 * i)), !this.isX, this.depth + 1));
+                    }
+                }
+                RecursiveTask.invokeAll(tasks);
+            }
+            return Solver.this.minimax(this.field, this.isX);
+        }
+    }
+}
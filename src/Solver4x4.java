@@ -0,0 +1,519 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Strong solve of 4x4 tic-tac-toe (four in a row), sharded over worker
+// processes.
+//
+// java -cp build Solver4x4 solve dir [workers] [shards per level]
+// java -cp build Solver4x4 query dir position...   16 cells, e.g. "X....O.........."
+//
+// The positions with n stones, X having the extra one for odd n, form level
+// n. A level is ranked densely in the combinatorial number system: first the
+// set of occupied cells, then which of them are X. Levels are solved
+// backwards from the full board, and a level only looks at the level above,
+// so 3^16 = 43M raw positions come down to at most 2M per level.
+//
+// Every level is cut into shards of consecutive ranks. Worker processes map
+// the level above read-only, share the shards between them and solve only
+// the positions that are canonical under the 8 symmetries of the board. The
+// coordinator then merges the shards, fills in every other position from
+// its canonical one and writes the level file.
+//
+// Files in dir; each is written under a .tmp name and renamed once complete,
+// so a killed solve resumes from the shards and levels already on disk:
+//   level-NN.shard-FROM-TO  one byte per rank from FROM to TO (exclusive),
+//                       0 where not canonical; the range is in the name so
+//                       a resume with other shard counts never reuses them
+//   level-NN            one byte per rank: Board.X, Board.O or Board.DRAW
+//   tictactoe4.tb       int MAGIC, int VERSION, long CRC32 of the levels,
+//                       then levels 0-16 at 2 bits per position, 4 per
+//                       byte with the lowest rank in the lowest bits, every
+//                       level starting on a new byte
+public class Solver4x4 {
+    public static final int MAGIC = 0x54545434; // "TTT4"
+    public static final int VERSION = 2; // 2: CRC32 in the header
+    public static final int SIDE = 4;
+    public static final int CELLS = SIDE * SIDE;
+    public static final String TABLEBASE = "tictactoe4.tb";
+    private static final int MIN_SHARD = 1 << 16; // ranks
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+
+    private static final long[][] BINOMIAL = new long[CELLS + 1][CELLS + 1];
+    private static final long[] LINES = new MnkBoard(SIDE, SIDE, SIDE).winMasks;
+    // SYM_LUT[s][half][byte]: the cells of one byte of a mask under symmetry s
+    private static final int[][][] SYM_LUT = new int[8][2][256];
+    static {
+        for (int n = 0; n <= CELLS; n++) {
+            Solver4x4.BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                Solver4x4.BINOMIAL[n][k] = Solver4x4.BINOMIAL[n - 1][k - 1] + Solver4x4.BINOMIAL[n - 1][k];
+            }
+        }
+
+        for (int s = 0; s < 8; s++) {
+            int[] to = new int[CELLS];
+            for (int cell = 0; cell < CELLS; cell++) {
+                int row = cell / SIDE, col = cell % SIDE;
+                for (int r = 0; r < s % 4; r++) {
+                    int t = row;
+                    row = col;
+                    col = SIDE - 1 - t;
+                }
+                if (s >= 4) {
+                    col = SIDE - 1 - col;
+                }
+                to[cell] = row * SIDE + col;
+            }
+            for (int half = 0; half < 2; half++) {
+                for (int b = 0; b < 256; b++) {
+                    int mask = 0;
+                    for (int i = 0; i < 8; i++) {
+                        if ((b & (1 << i)) != 0) {
+                            mask |= 1 << to[8 * half + i];
+                        }
+                    }
+                    Solver4x4.SYM_LUT[s][half][b] = mask;
+                }
+            }
+        }
+    }
+
+
+    // positions with n stones
+    public static int levelSize(int n) {
+        return (int) (Solver4x4.BINOMIAL[CELLS][n] * Solver4x4.BINOMIAL[n][Solver4x4.xCount(n)]);
+    }
+
+    public static int xCount(int n) {
+        return (n + 1) / 2;
+    }
+
+    public static int rank(int x, int o) {
+        int occupied = x | o;
+        int n = Integer.bitCount(occupied);
+        long occRank = 0, xRank = 0;
+        int j = 0, k = 0;
+        for (int rest = occupied; rest != 0; rest &= rest - 1) {
+            int cell = Integer.numberOfTrailingZeros(rest);
+            occRank += Solver4x4.BINOMIAL[cell][++j];
+            if ((x & (1 << cell)) != 0) {
+                xRank += Solver4x4.BINOMIAL[j - 1][++k];
+            }
+        }
+        return (int) (occRank * Solver4x4.BINOMIAL[n][Solver4x4.xCount(n)] + xRank);
+    }
+
+    // x << 16 | o of the position with `rank` on level n
+    public static int unrank(int n, int rank) {
+        int nx = Solver4x4.xCount(n);
+        long per = Solver4x4.BINOMIAL[n][nx];
+        long occRank = rank / per, xRank = rank % per;
+
+        int[] cells = new int[n];
+        int occupied = 0;
+        for (int j = n, cell = CELLS - 1; j >= 1; j--) {
+            while (Solver4x4.BINOMIAL[cell][j] > occRank) {
+                cell--;
+            }
+            occRank -= Solver4x4.BINOMIAL[cell][j];
+            occupied |= 1 << cell;
+            cells[j - 1] = cell;
+            cell--;
+        }
+        int x = 0;
+        for (int k = nx, j = n - 1; k >= 1; k--) {
+            while (Solver4x4.BINOMIAL[j][k] > xRank) {
+                j--;
+            }
+            xRank -= Solver4x4.BINOMIAL[j][k];
+            x |= 1 << cells[j];
+            j--;
+        }
+        return (x << 16) | (occupied & ~x);
+    }
+
+    private static int transform(int mask, int s) {
+        int[][] lut = Solver4x4.SYM_LUT[s];
+        return lut[0][mask & 0xFF] | lut[1][mask >>> 8];
+    }
+
+    // the symmetric variant with the smallest x << 16 | o
+    public static int canonical(int position) {
+        int x = position >>> 16, o = position & 0xFFFF;
+        int best = position;
+        for (int s = 1; s < 8; s++) {
+            int t = (Solver4x4.transform(x, s) << 16) | Solver4x4.transform(o, s);
+            if (Integer.compareUnsigned(t, best) < 0) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static boolean hasLine(int stones) {
+        for (long line : Solver4x4.LINES) {
+            if ((stones & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the value of a position on level n, from the values of level n + 1
+    private static byte solve(int x, int o, int n, ByteBuffer above) {
+        if (Solver4x4.hasLine(x)) {
+            return Board.X;
+        }
+        if (Solver4x4.hasLine(o)) {
+            return Board.O;
+        }
+        if (n == CELLS) {
+            return Board.DRAW;
+        }
+        boolean isX = n % 2 == 0;
+        byte mark = isX ? Board.X : Board.O;
+        byte best = isX ? Board.O : Board.X;
+        for (int free = ~(x | o) & 0xFFFF; free != 0 && best != mark; free &= free - 1) {
+            int bit = free & -free;
+            byte value = isX ? above.get(Solver4x4.rank(x | bit, o)) : above.get(Solver4x4.rank(x, o | bit));
+            best = Board.better(isX, value, best);
+        }
+        return best;
+    }
+
+
+    private static Path levelPath(Path dir, int n) {
+        return dir.resolve(String.format("level-%02d", n));
+    }
+
+    private static Path shardPath(Path dir, int n, int from, int to) {
+        return dir.resolve(String.format("level-%02d.shard-%08d-%08d", n, from, to));
+    }
+
+    private static int shards(int n, int perLevel) {
+        return Math.max(1, Math.min(perLevel, Solver4x4.levelSize(n) / Solver4x4.MIN_SHARD));
+    }
+
+    // first rank of shard s, and the end of shard s - 1
+    private static int shardStart(int n, int shard, int shards) {
+        return (int) ((long) Solver4x4.levelSize(n) * shard / shards);
+    }
+
+    // writes `data` under a .tmp name and renames it to `path` once complete
+    private static void writeAtomic(Path path, ByteBuffer data) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                ch.write(data);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+
+    // Worker process: solves the shards s of level n with s % workers == id
+    // that are not on disk yet. Prints a SHARD line per shard and a PEAK
+    // line at the end.
+    private static void worker(Path dir, int n, int perLevel, int id, int workers) throws IOException {
+        ByteBuffer above = (n < CELLS) ? Solver4x4.map(Solver4x4.levelPath(dir, n + 1)) : null;
+        int shards = Solver4x4.shards(n, perLevel);
+        for (int s = id; s < shards; s += workers) {
+            int from = Solver4x4.shardStart(n, s, shards);
+            int to = Solver4x4.shardStart(n, s + 1, shards);
+            Path path = Solver4x4.shardPath(dir, n, from, to);
+            if (Files.exists(path)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            ByteBuffer out = ByteBuffer.allocate(to - from);
+            int solved = 0;
+            for (int r = from; r < to; r++) {
+                int position = Solver4x4.unrank(n, r);
+                if (Solver4x4.canonical(position) == position) {
+                    out.put(r - from, Solver4x4.solve(position >>> 16, position & 0xFFFF, n, above));
+                    solved++;
+                }
+            }
+            Solver4x4.writeAtomic(path, out);
+            System.out.println("SHARD " + s + " " + (to - from) + " " + solved + " " + (System.nanoTime() - start));
+        }
+
+        long heap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap += pool.getPeakUsage().getUsed();
+            }
+        }
+        long rss = -1;
+        Path status = Paths.get("/proc/self/status");
+        if (Files.isReadable(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmHWM:")) {
+                    rss = Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        }
+        System.out.println("PEAK " + heap + " " + rss);
+    }
+
+    // runs the workers of level n, returns {ranks, solved, nanos, peak heap,
+    // peak rss} per worker
+    private static long[][] runWorkers(Path dir, int n, int perLevel, int workers) throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<Process> processes = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(java);
+            cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            cmd.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "Solver4x4", "worker",
+                dir.toString(), "" + n, "" + perLevel, "" + w, "" + workers));
+            processes.add(new ProcessBuilder(cmd).redirectErrorStream(true).start());
+        }
+
+        long[][] stats = new long[workers][5];
+        for (int w = 0; w < workers; w++) {
+            Process p = processes.get(w);
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    String[] parts = line.split(" ");
+                    if (parts[0].equals("SHARD")) {
+                        stats[w][0] += Long.parseLong(parts[2]);
+                        stats[w][1] += Long.parseLong(parts[3]);
+                        stats[w][2] += Long.parseLong(parts[4]);
+                    } else if (parts[0].equals("PEAK")) {
+                        stats[w][3] = Long.parseLong(parts[1]);
+                        stats[w][4] = Long.parseLong(parts[2]);
+                    } else {
+                        System.err.println("[Solver4x4] worker: " + line);
+                    }
+                }
+            }
+            if (p.waitFor() != 0) {
+                throw new IllegalStateException("worker for level " + n + " exited with " + p.exitValue());
+            }
+        }
+        return stats;
+    }
+
+    // joins the shards of level n and fills in the non-canonical positions
+    private static void merge(Path dir, int n, int perLevel) throws IOException {
+        int size = Solver4x4.levelSize(n);
+        int shards = Solver4x4.shards(n, perLevel);
+        byte[] level = new byte[size];
+        for (int s = 0; s < shards; s++) {
+            int from = Solver4x4.shardStart(n, s, shards);
+            int to = Solver4x4.shardStart(n, s + 1, shards);
+            Path path = Solver4x4.shardPath(dir, n, from, to);
+            byte[] shard = Files.readAllBytes(path);
+            if (shard.length != to - from) {
+                throw new IOException(path + " has " + shard.length + " bytes, its range needs " + (to - from));
+            }
+            System.arraycopy(shard, 0, level, from, shard.length);
+        }
+        for (int r = 0; r < size; r++) {
+            if (level[r] == 0) {
+                int canonical = Solver4x4.canonical(Solver4x4.unrank(n, r));
+                level[r] = level[Solver4x4.rank(canonical >>> 16, canonical & 0xFFFF)];
+            }
+        }
+        Solver4x4.writeAtomic(Solver4x4.levelPath(dir, n), ByteBuffer.wrap(level));
+        // also the shards and .tmp files of runs with other shard counts
+        String prefix = String.format("level-%02d.shard-", n);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void writeTablebase(Path dir) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(Solver4x4.tablebaseBytes());
+        out.putInt(Solver4x4.MAGIC);
+        out.putInt(Solver4x4.VERSION);
+        out.putLong(0L);
+        for (int n = 0; n <= CELLS; n++) {
+            byte[] level = Files.readAllBytes(Solver4x4.levelPath(dir, n));
+            for (int r = 0; r < level.length; r += 4) {
+                int b = 0;
+                for (int i = 0; i < 4 && r + i < level.length; i++) {
+                    b |= level[r + i] << (2 * i);
+                }
+                out.put((byte) b);
+            }
+        }
+        out.putLong(2 * Integer.BYTES, Solver4x4.checksum(out));
+        out.flip();
+        Solver4x4.writeAtomic(dir.resolve(Solver4x4.TABLEBASE), out);
+    }
+
+    private static int tablebaseBytes() {
+        int bytes = Solver4x4.HEADER_BYTES;
+        for (int n = 0; n <= CELLS; n++) {
+            bytes += (Solver4x4.levelSize(n) + 3) / 4;
+        }
+        return bytes;
+    }
+
+    // CRC32 of the levels, everything after the header
+    private static long checksum(ByteBuffer buf) {
+        CRC32 crc = new CRC32();
+        ByteBuffer levels = buf.duplicate();
+        levels.position(Solver4x4.HEADER_BYTES);
+        levels.limit(buf.capacity());
+        crc.update(levels);
+        return crc.getValue();
+    }
+
+    public static void solveAll(Path dir, int workers, int perLevel) throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        for (int n = CELLS; n >= 0; n--) {
+            if (Files.exists(Solver4x4.levelPath(dir, n))) {
+                System.out.println(String.format("[Solver4x4] level %2d: on disk", n));
+                continue;
+            }
+            long levelStart = System.nanoTime();
+            int shards = Solver4x4.shards(n, perLevel);
+            int procs = Math.min(workers, shards);
+            long[][] stats = Solver4x4.runWorkers(dir, n, perLevel, procs);
+            Solver4x4.merge(dir, n, perLevel);
+            long elapsed = System.nanoTime() - levelStart;
+            long solved = 0;
+            for (long[] w : stats) {
+                solved += w[1];
+            }
+            System.out.println(String.format("[Solver4x4] level %2d: %8d positions (%7d canonical solved now) in %3d shards "
+                + "on %d workers, %5d ms", n, Solver4x4.levelSize(n), solved, shards, procs, elapsed / 1000000));
+            for (int w = 0; w < procs; w++) {
+                long[] ws = stats[w];
+                System.out.println(String.format("[Solver4x4]   worker %d: %8d positions, %.2fM positions/s, "
+                    + "peak heap %d MB, peak rss %d MB", w, ws[0], (ws[2] == 0) ? 0.0 : ws[0] * 1e3 / ws[2],
+                    ws[3] >> 20, ws[4] >> 20));
+            }
+        }
+        Solver4x4.writeTablebase(dir);
+        System.out.println("[Solver4x4] solved in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+
+    // the solved tablebase, mapped read-only
+    public static class Table {
+        private final ByteBuffer data;
+        private final int[] offsets = new int[CELLS + 1];
+
+        public Table(Path path) throws IOException {
+            this.data = Solver4x4.map(path);
+            if (this.data.capacity() != Solver4x4.tablebaseBytes() || this.data.getInt(0) != Solver4x4.MAGIC
+                    || this.data.getInt(4) != Solver4x4.VERSION) {
+                throw new IOException(path + " is not a version " + Solver4x4.VERSION + " 4x4 tablebase");
+            }
+            if (this.data.getLong(2 * Integer.BYTES) != Solver4x4.checksum(this.data)) {
+                throw new IOException(path + ": checksum mismatch");
+            }
+            int offset = Solver4x4.HEADER_BYTES;
+            for (int n = 0; n <= CELLS; n++) {
+                this.offsets[n] = offset;
+                offset += (Solver4x4.levelSize(n) + 3) / 4;
+            }
+        }
+
+        // Board.X, Board.O or Board.DRAW with best play, the winner once
+        // there is a line
+        public byte value(int x, int o) {
+            int n = Integer.bitCount(x | o);
+            int r = Solver4x4.rank(x, o);
+            return (byte) ((this.data.get(this.offsets[n] + r / 4) >> (2 * (r % 4))) & Board.MASK);
+        }
+
+        // 16-bit mask of the moves that keep the value, 0 once decided
+        public int bestMoves(int x, int o) {
+            int n = Integer.bitCount(x | o);
+            if (n == CELLS || Solver4x4.hasLine(x) || Solver4x4.hasLine(o)) {
+                return 0;
+            }
+            boolean isX = n % 2 == 0;
+            byte value = this.value(x, o);
+            int moves = 0;
+            for (int free = ~(x | o) & 0xFFFF; free != 0; free &= free - 1) {
+                int bit = free & -free;
+                if ((isX ? this.value(x | bit, o) : this.value(x, o | bit)) == value) {
+                    moves |= bit;
+                }
+            }
+            return moves;
+        }
+    }
+
+    // "X...O..........." into x << 16 | o
+    public static int parse(String s) {
+        if (s.length() != CELLS) {
+            throw new IllegalArgumentException("expected " + CELLS + " cells: " + s);
+        }
+        int x = 0, o = 0;
+        for (int i = 0; i < CELLS; i++) {
+            switch (s.charAt(i)) {
+                case 'X': case 'x': x |= 1 << i; break;
+                case 'O': case 'o': o |= 1 << i; break;
+                case '.': case '-': case '_': break;
+                default: throw new IllegalArgumentException("bad cell '" + s.charAt(i) + "': " + s);
+            }
+        }
+        int lead = Integer.bitCount(x) - Integer.bitCount(o);
+        if (lead != 0 && lead != 1) {
+            throw new IllegalArgumentException("not a position, X must have as many stones as O or one more: " + s);
+        }
+        return (x << 16) | o;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = (args.length >= 1) ? args[0] : "solve";
+        Path dir = Paths.get((args.length >= 2) ? args[1] : "solve4x4");
+        if (mode.equals("worker")) {
+            Solver4x4.worker(dir, Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                Integer.parseInt(args[5]));
+        } else if (mode.equals("query")) {
+            Table table = new Table(dir.resolve(Solver4x4.TABLEBASE));
+            String[] positions = (args.length >= 3) ? Arrays.copyOfRange(args, 2, args.length) : new String[] { "................" };
+            for (String s : positions) {
+                int position = Solver4x4.parse(s);
+                int x = position >>> 16, o = position & 0xFFFF;
+                String best = "";
+                for (int moves = table.bestMoves(x, o); moves != 0; moves &= moves - 1) {
+                    best += (best.isEmpty() ? "" : ",") + Integer.numberOfTrailingZeros(moves);
+                }
+                byte value = table.value(x, o);
+                System.out.println(s + " " + (value == Board.DRAW ? "DRAW" : "" + Board.symbol(value)) + " best: " + best);
+            }
+        } else {
+            int workers = (args.length >= 3) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            int perLevel = (args.length >= 4) ? Integer.parseInt(args[3]) : 4 * workers;
+            Solver4x4.solveAll(dir, workers, perLevel);
+        }
+    }
+}
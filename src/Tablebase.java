@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// A MinimaxTable that is served straight from a read-only mapping of a
+// tablebase file, so every JVM on the host shares the same page cache pages.
+//
+// Entries put after mapping, which can only be ones the file leaves
+// NOT_COMPUTED, go to a small heap table that is ORed over the mapping.
+// clear() drops the mapping, the table then starts over on the heap like a
+// new MinimaxTable.
+class MappedMinimaxTable extends MinimaxTable {
+    private LongBuffer words; // null once cleared
+
+    public MappedMinimaxTable(LongBuffer words) {
+        this.words = words;
+    }
+
+    @Override
+    public long word(int i) {
+        LongBuffer words = this.words;
+        return (words == null) ? super.word(i) : words.get(i) | super.word(i);
+    }
+
+    // not safe while other threads use the table
+    @Override
+    public void clear() {
+        this.words = null;
+        super.clear();
+    }
+
+    public boolean isMapped() {
+        return this.words != null;
+    }
+}
+
+// Binary file format for a fully solved MinimaxTable:
+//
+//   int  MAGIC
+//   int  VERSION
+//   int  MinimaxTable.NUM_CLASSES
+//   int  MinimaxTable.NUM_WORDS
+//   long CRC32 of the words
+//   long words[NUM_WORDS]
+//
+// all big endian.
+public class Tablebase {
+    public static final int MAGIC = 0x54545442; // "TTTB"
+    public static final int VERSION = 2; // 2: classes ranked by center, corners, edges
+    public static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    public static final String DEFAULT_PATH = System.getProperty("ttt.tablebase", "tictactoe.tb");
+
+
+    // solves every position (not only the ones reachable from the empty
+    // board) so lookups against the mapping never miss
+    public static MinimaxTable solveAll() {
+        Solver solver = new Solver();
+        for (Board b : Board.genAll()) {
+            solver.minimax(b.getField(), true);
+            solver.minimax(b.getField(), false);
+        }
+        return solver.table();
+    }
+
+    public static void write(Path path, MinimaxTable table) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Tablebase.HEADER_BYTES + MinimaxTable.NUM_WORDS * Long.BYTES);
+        buf.putInt(Tablebase.MAGIC);
+        buf.putInt(Tablebase.VERSION);
+        buf.putInt(MinimaxTable.NUM_CLASSES);
+        buf.putInt(MinimaxTable.NUM_WORDS);
+        buf.putLong(0L);
+        for (int i = 0; i < MinimaxTable.NUM_WORDS; i++) {
+            buf.putLong(table.word(i));
+        }
+        buf.putLong(4 * Integer.BYTES, Tablebase.checksum(buf, Tablebase.HEADER_BYTES));
+        buf.flip();
+
+        // write next to the target and move it in place, so readers never
+        // map a half-written file
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), ".tablebase", ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // returns null if the file is missing, from another version or corrupt
+    public static MinimaxTable open(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() != Tablebase.HEADER_BYTES + MinimaxTable.NUM_WORDS * Long.BYTES) {
+                System.err.println("[Tablebase] ignoring " + path + ": wrong size");
+                return null;
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            System.err.println("[Tablebase] ignoring " + path + ": " + e.getMessage());
+            return null;
+        }
+
+        if (buf.getInt(0) != Tablebase.MAGIC
+                || buf.getInt(4) != Tablebase.VERSION
+                || buf.getInt(8) != MinimaxTable.NUM_CLASSES
+                || buf.getInt(12) != MinimaxTable.NUM_WORDS) {
+            System.err.println("[Tablebase] ignoring " + path + ": stale header");
+            return null;
+        }
+        if (buf.getLong(16) != Tablebase.checksum(buf, Tablebase.HEADER_BYTES)) {
+            System.err.println("[Tablebase] ignoring " + path + ": checksum mismatch");
+            return null;
+        }
+
+        buf.position(Tablebase.HEADER_BYTES);
+        return new MappedMinimaxTable(buf.slice().asLongBuffer());
+    }
+
+    private static long checksum(ByteBuffer buf, int offset) {
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buf.duplicate();
+        payload.position(offset);
+        payload.limit(buf.capacity());
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        // java -cp build Tablebase generate [path]
+        // java -cp build Tablebase verify [path]
+        Path path = Paths.get(args.length >= 2 ? args[1] : Tablebase.DEFAULT_PATH);
+        if (args.length >= 1 && args[0].equals("generate")) {
+            long start = System.nanoTime();
+            Tablebase.write(path, Tablebase.solveAll());
+            long elapsed = System.nanoTime() - start;
+            System.out.println("[Tablebase] wrote " + path + " - took " + (float)elapsed / 1000.0 + " us");
+        } else {
+            long start = System.nanoTime();
+            MinimaxTable table = Tablebase.open(path);
+            long elapsed = System.nanoTime() - start;
+            if (table == null) {
+                System.out.println("[Tablebase] " + path + " is not usable");
+                System.exit(1);
+            }
+            System.out.println("[Tablebase] opened " + path + " - took " + (float)elapsed / 1000.0 + " us");
+
+            MinimaxTable solved = Tablebase.solveAll();
+            for (int i = 0; i < MinimaxTable.NUM_WORDS; i++) {
+                if (table.word(i) != solved.word(i)) {
+                    System.out.println("[Tablebase] mismatch in word " + i);
+                    System.exit(1);
+                }
+            }
+            System.out.println("[Tablebase] matches the solved game");
+        }
+    }
+}
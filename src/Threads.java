@@ -0,0 +1,39 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Executors for blocking, connection-per-task work, and background threads.
+public class Threads {
+    // one virtual thread per task where the JDK has them (21+), an unbounded
+    // cached pool of daemon platform threads otherwise
+    public static ExecutorService newPerTaskExecutor(String name) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(null, r, name, 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // runs `work` on a new daemon thread, for warm-ups that must not hold
+    // up the caller or the JVM's exit
+    public static Thread startDaemon(String name, Runnable work) {
+        Thread t = new Thread(work, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -1,8 +1,33 @@
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class TicTacToe {
-    private ArrayList<Integer> xPos = new ArrayList<Integer>();
-    private ArrayList<Integer> oPos = new ArrayList<Integer>();
+    // The eight lines as 9-bit masks (bit i = sector i), and the lines through each sector.
+    private static final int[] LINES = Lines.masks();
+    private static final int[][] LINES_THROUGH = new int[9][];
+    static {
+        for (int i = 0; i < 9; i++) {
+            int n = 0;
+            for (int line : LINES) {
+                n += (line >> i) & 1;
+            }
+            LINES_THROUGH[i] = new int[n];
+            n = 0;
+            for (int line : LINES) {
+                if (((line >> i) & 1) != 0) {
+                    LINES_THROUGH[i][n++] = line;
+                }
+            }
+        }
+    }
+    private static final int ALL_SECTORS = 0x1FF;
+
+    // One bit per sector for each player, the winner is updated with every placed mark.
+    private int xMask = 0;
+    private int oMask = 0;
+    private byte winner = Board.EMPTY;
+    // The sectors played, 4 bits each, the first move in the lowest bits.
+    private long moves = 0;
     private final String X = "X";
     private final String O = "O";
     private int counter = 0;
@@ -18,10 +43,6 @@ public class TicTacToe {
     }
 
     public TicTacToe() {
-        for (int i = 0; i < 9; i++) {
-            xPos.add(-1);
-            oPos.add(-1);
-        }
     }
 
     private void init() {
@@ -31,7 +52,8 @@ public class TicTacToe {
     }
 
     private void gameloop(Player cp1, Player cp2) {
-        while (!this.checkVictory()[0]) {
+        long seed = System.nanoTime();
+        while (!this.isOver()) {
             System.out.println(this.toString());
             if (counter % 2 == 0) {
                 Move move = cp1.makeMove(this);
@@ -40,6 +62,7 @@ public class TicTacToe {
                     move = this.handleTries(cp1);
                 }
                 this.placeMark(move);
+                cp1.ponder(this);
             } else {
                 Move move = cp2.makeMove(this);
                 // Checking internally if the inputted move is viable or not.
@@ -47,13 +70,29 @@ public class TicTacToe {
                     move = this.handleTries(cp2);
                 }
                 this.placeMark(move);
+                cp2.ponder(this);
             }
             counter++;
         }
+        cp1.ponder(this);
+        cp2.ponder(this);
+
+        GameJournal journal = GameJournal.global();
+        if (journal != null) {
+            try {
+                journal.append(seed, GameJournal.pack(GameJournal.playerId(cp1), GameJournal.playerId(cp2),
+                    this.moves, counter, this.winner, false));
+            } catch (IOException e) {
+                System.out.println("Could not record the game: " + e.getMessage());
+            }
+        }
 
-        if (this.checkVictory()[1]) {
+        if (this.winner == Board.X) {
             System.out.println("Player X won in " + counter + "rounds!!!");
             System.out.println("\n" + this.toString());
+        } else if (this.winner == Board.DRAW) {
+            System.out.println("Nobody won after " + counter + "rounds.");
+            System.out.println("\n" + this.toString());
         } else {
             System.out.println("Player O won in " + counter + "rounds!!!");
             System.out.println("\n" + this.toString());
@@ -77,68 +116,68 @@ public class TicTacToe {
         // Checking for faulty inputs(input /e [0, 8] or already taken).
         if (input < 0 || input > 8) {
             return false;
-        } else if (xPos.indexOf(input) != -1 || oPos.indexOf(input) != -1) {
-            return false;
         }
-        return true;
+        return ((xMask | oMask) & (1 << input)) == 0;
     }
 
-    private boolean[] checkVictory() {
-        String[] xAndO = new String[9];
-        for (int i = 0; i < 9; i++) {
-            if (xPos.indexOf(i) != -1) {
-                xAndO[i] = X;
-            } else if (oPos.indexOf(i) != -1) {
-                xAndO[i] = O;
-            } else {
-                xAndO[i] = "";
-            }
-        }
+    public boolean isOver() {
+        return this.winner != Board.EMPTY;
+    }
 
-        if (hasHorizontal(X, xAndO) || hasVertical(X, xAndO) || hasDiagonal(X, xAndO)) {
-            return new boolean[]{true, true};
-        } else if (hasHorizontal(O, xAndO) || hasVertical(O, xAndO) || hasDiagonal(O, xAndO)) {
-            return new boolean[]{true, false};
-        }
-        return new boolean[]{false, true};
+    // Board.X, Board.O, Board.DRAW, or Board.EMPTY while the game is running
+    public byte getWinner() {
+        return this.winner;
     }
-    
-    private boolean hasHorizontal(String x, String[] xAndO) {
-        if (xAndO[0] == x && xAndO[1] == x && xAndO[2] == x || 
-        xAndO[3] == x && xAndO[4] == x && xAndO[5] == x ||
-        xAndO[6] == x && xAndO[7] == x && xAndO[8] == x) {
-            return true;
+
+    private void placeMark(Move move) {
+        if (!this.play(move)) {
+            System.out.println("An error has occured! The move you wanted to make is not possible. Exiting now...");
+            System.exit(0);
         }
-        return false;
     }
 
-    private boolean hasVertical(String x, String[] xAndO) {
-        if (xAndO[0] == x && xAndO[3] == x && xAndO[6] == x || 
-        xAndO[1] == x && xAndO[4] == x && xAndO[7] == x ||
-        xAndO[2] == x && xAndO[5] == x && xAndO[8] == x) {
-            return true;
+    // Places the mark if the move is viable, without printing or exiting. Used by GameEngine.
+    // Rejects moves once the game is over and marks out of turn (X moves first).
+    public boolean play(Move move) {
+        if (move == null || this.isOver() || !this.checkMoveViability(move.getSector())) {
+            return false;
+        }
+        boolean xToMove = Integer.bitCount(xMask) == Integer.bitCount(oMask);
+        if (move.getMark() != (xToMove ? 'X' : 'O')) {
+            return false;
+        }
+        int bit = 1 << move.getSector();
+        this.moves |= (long) move.getSector() << (4 * Integer.bitCount(xMask | oMask));
+        int mask;
+        if (move.getMark() == 'X') {
+            mask = xMask |= bit;
+        } else {
+            mask = oMask |= bit;
         }
-        return false;
-    }
 
-    private boolean hasDiagonal(String x, String[] xAndO) {
-        if (xAndO[0] == x && xAndO[4] == x && xAndO[8] == x ||
-        xAndO[2] == x && xAndO[4] == x && xAndO[6] == x) {
-            return true;
+        // Only the lines through the new mark can have been completed.
+        for (int line : LINES_THROUGH[move.getSector()]) {
+            if ((mask & line) == line) {
+                winner = move.getMark() == 'X' ? Board.X : Board.O;
+                return true;
+            }
+        }
+        if ((xMask | oMask) == ALL_SECTORS) {
+            winner = Board.DRAW;
         }
-        return false;
+        return true;
     }
 
-    private void placeMark(Move move) {
-        if (this.checkMoveViability(move.getSector())) {
-            if (move.getMark() == 'X') {
-                xPos.set(move.getSector(), move.getSector());
-            } else {
-                oPos.set(move.getSector(), move.getSector());
+    private void updateWinner() {
+        winner = ((xMask | oMask) == ALL_SECTORS) ? Board.DRAW : Board.EMPTY;
+        for (int line : LINES) {
+            if ((xMask & line) == line) {
+                winner = Board.X;
+                return;
+            } else if ((oMask & line) == line) {
+                winner = Board.O;
+                return;
             }
-        } else {
-            System.out.println("An error has occured! The move you wanted to make is not possible. Exiting now...");
-            System.exit(0);
         }
     }
 
@@ -147,11 +186,11 @@ public class TicTacToe {
         int sectorCounter = 0;
         for (; sectorCounter < 9; sectorCounter++) {
             result = result + " ";
-            if (xPos.get(sectorCounter) == sectorCounter && oPos.get(sectorCounter) == sectorCounter) {
+            if ((xMask & oMask & (1 << sectorCounter)) != 0) {
                 //throw new Exception("'O' and 'X' are in the same spot!");
-            } else if (xPos.get(sectorCounter) == sectorCounter) {
+            } else if ((xMask & (1 << sectorCounter)) != 0) {
                 result = result + X + " ";
-            } else if (oPos.get(sectorCounter) == sectorCounter) {
+            } else if ((oMask & (1 << sectorCounter)) != 0) {
                 result = result + O + " ";
             } else {
                 result = result + "  ";
@@ -168,20 +207,72 @@ public class TicTacToe {
         return result;
     }
 
+    // The position in Board's packed format.
+    public int getField() {
+        return Board.fromMasks(this.xMask, this.oMask);
+    }
+
+    // The sectors played so far, 4 bits each, the first move in the lowest bits.
+    // Unknown (0) for positions set with setMasks.
+    public long getMoves() {
+        return this.moves;
+    }
+
+    public int getXMask() {
+        return this.xMask;
+    }
+
+    public int getOMask() {
+        return this.oMask;
+    }
+
+    // Sets both players' marks at once, e.g. to start from a given position.
+    public void setMasks(int xMask, int oMask) {
+        this.xMask = xMask & ALL_SECTORS;
+        this.oMask = oMask & ALL_SECTORS;
+        this.moves = 0;
+        this.updateWinner();
+    }
+
+    // Old list format: entry i is i if the sector is marked, -1 otherwise.
+    // Allocates a new list on every call, use getXMask() instead.
+    @Deprecated
     public ArrayList<Integer> getXPos() {
-        return this.xPos;
+        return toPos(this.xMask);
     }
 
+    @Deprecated
     public void setXPos(ArrayList<Integer> xPos) {
-        this.xPos = xPos;
+        this.setMasks(toMask(xPos), this.oMask);
     }
 
+    // Allocates a new list on every call, use getOMask() instead.
+    @Deprecated
     public ArrayList<Integer> getOPos() {
-        return this.oPos;
+        return toPos(this.oMask);
     }
 
+    @Deprecated
     public void setOPos(ArrayList<Integer> oPos) {
-        this.oPos = oPos;
+        this.setMasks(this.xMask, toMask(oPos));
+    }
+
+    private static ArrayList<Integer> toPos(int mask) {
+        ArrayList<Integer> pos = new ArrayList<Integer>();
+        for (int i = 0; i < 9; i++) {
+            pos.add((mask & (1 << i)) != 0 ? i : -1);
+        }
+        return pos;
+    }
+
+    private static int toMask(ArrayList<Integer> pos) {
+        int mask = 0;
+        for (int p : pos) {
+            if (p != -1) {
+                mask |= 1 << p;
+            }
+        }
+        return mask;
     }
 
     public int getCounter() {
@@ -0,0 +1,293 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size transposition table for the alpha-beta searches, keyed by
+// Zobrist hashes.
+//
+// java -cp build TranspositionTable [rows cols k] [millis per move] [MB]
+//
+// Buckets of two entries in one long[], each entry two longs: key ^ data and
+// data. Threads may share a table without locks; an entry torn by two
+// racing writers fails the key check and reads as a miss (the XOR trick).
+// The generation belongs to the owner of the table, which calls newSearch()
+// once per move, not to the players searching in it.
+// The replacement policy picks the victim within a bucket:
+//   ALWAYS          the entry with the same key, else the older or shallower one
+//   DEPTH_PREFERRED the same, but a deeper entry of the current search is kept
+//   TWO_TIER        slot 0 depth-preferred, slot 1 takes whatever slot 0 does not
+//
+// data packs the search result:
+//   bits  0-31 score, mate scores relative to the stored node
+//   bits 32-39 depth
+//   bits 40-41 bound (EXACT, LOWER, UPPER)
+//   bits 42-49 best move + 1, 0 for none
+//   bits 50-57 generation of the search that stored it
+public class TranspositionTable {
+    public enum Policy { ALWAYS, DEPTH_PREFERRED, TWO_TIER }
+
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; // score >= value
+    public static final int UPPER = 3; // score <= value
+    public static final long MISS = 0;
+    private static final int ENTRY_LONGS = 2;
+    private static final int BUCKET_LONGS = 2 * ENTRY_LONGS;
+
+    private final long[] table;
+    private final int mask; // buckets - 1
+    private final Policy policy;
+    private volatile int generation = 0;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder overwrites = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+
+    // as many buckets as fit into `bytes`, rounded down to a power of two
+    public TranspositionTable(long bytes, Policy policy) {
+        long buckets = Long.highestOneBit(Math.max(1, bytes / (BUCKET_LONGS * Long.BYTES)));
+        if (buckets * BUCKET_LONGS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("table too large: " + bytes + " bytes");
+        }
+        this.table = new long[(int) buckets * BUCKET_LONGS];
+        this.mask = (int) buckets - 1;
+        this.policy = policy;
+    }
+
+
+    // one random key per side and cell, from a fixed seed so hashes are
+    // stable between runs
+    public static long[][] zobristKeys(int cells) {
+        SplittableRandom rng = new SplittableRandom(0x5EED_7AB1EL);
+        long[][] keys = new long[2][cells];
+        for (long[] side : keys) {
+            for (int c = 0; c < cells; c++) {
+                side[c] = rng.nextLong();
+            }
+        }
+        return keys;
+    }
+
+    public static long pack(int score, int depth, int bound, int move) {
+        return (score & 0xFFFFFFFFL) | ((long) depth << 32) | ((long) bound << 40) | ((long) (move + 1) << 42);
+    }
+
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 32) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 40) & 0x3;
+    }
+
+    // -1 for none
+    public static int move(long data) {
+        return ((int) (data >>> 42) & 0xFF) - 1;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 50) & 0xFF;
+    }
+
+    // a new search: entries of earlier ones are replaced first; only the
+    // owner calls it, a store racing with it may tag its entry either way
+    public void newSearch() {
+        this.generation = (this.generation + 1) & 0xFF;
+    }
+
+    public int sizeInBytes() {
+        return this.table.length * Long.BYTES;
+    }
+
+
+    // the data stored for `key`, MISS if there is none
+    public long probe(long key) {
+        this.probes.increment();
+        int base = ((int) key & this.mask) * BUCKET_LONGS;
+        for (int i = base; i < base + BUCKET_LONGS; i += ENTRY_LONGS) {
+            long data = this.table[i + 1];
+            if ((this.table[i] ^ data) == key && data != MISS) {
+                this.hits.increment();
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    public void store(long key, int score, int depth, int bound, int move) {
+        int generation = this.generation;
+        long data = TranspositionTable.pack(score, depth, bound, move) | ((long) generation << 50);
+        int base = ((int) key & this.mask) * BUCKET_LONGS;
+        int slot = -1;
+        for (int i = base; i < base + BUCKET_LONGS; i += ENTRY_LONGS) {
+            if ((this.table[i] ^ this.table[i + 1]) == key) {
+                slot = i;
+            }
+        }
+
+        if (slot < 0) {
+            int first = base, second = base + ENTRY_LONGS;
+            switch (this.policy) {
+                case ALWAYS:
+                    slot = this.worse(first, second, generation) ? first : second;
+                    break;
+                case DEPTH_PREFERRED:
+                    slot = this.worse(first, second, generation) ? first : second;
+                    if (!this.replaceable(slot, depth, generation)) {
+                        this.skipped.increment();
+                        return;
+                    }
+                    break;
+                case TWO_TIER:
+                    if (this.replaceable(first, depth, generation)) {
+                        // the old deep entry still beats an empty or always-replace slot
+                        if (this.table[first + 1] != MISS && this.table[second + 1] == MISS) {
+                            this.table[second] = this.table[first];
+                            this.table[second + 1] = this.table[first + 1];
+                        }
+                        slot = first;
+                    } else {
+                        slot = second;
+                    }
+                    break;
+            }
+            if (this.table[slot + 1] != MISS) {
+                this.overwrites.increment();
+            }
+        } else if (this.policy != Policy.ALWAYS && !this.replaceable(slot, depth, generation)
+                && TranspositionTable.bound(this.table[slot + 1]) == EXACT) {
+            // keep an exact result of a deeper search of the same position
+            this.skipped.increment();
+            return;
+        }
+
+        this.table[slot] = key ^ data;
+        this.table[slot + 1] = data;
+        this.stores.increment();
+    }
+
+    // whether a result searched to `depth` may replace the entry at `i`
+    private boolean replaceable(int i, int depth, int generation) {
+        long data = this.table[i + 1];
+        return data == MISS || TranspositionTable.generation(data) != generation
+            || TranspositionTable.depth(data) <= depth;
+    }
+
+    // whether the entry at `a` is a better victim than the one at `b`
+    private boolean worse(int a, int b, int generation) {
+        long da = this.table[a + 1], db = this.table[b + 1];
+        if (da == MISS || db == MISS) {
+            return da == MISS;
+        }
+        boolean oldA = TranspositionTable.generation(da) != generation;
+        boolean oldB = TranspositionTable.generation(db) != generation;
+        if (oldA != oldB) {
+            return oldA;
+        }
+        return TranspositionTable.depth(da) <= TranspositionTable.depth(db);
+    }
+
+    public void clear() {
+        Arrays.fill(this.table, 0L);
+    }
+
+
+    public long getProbes() {
+        return this.probes.sum();
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getStores() {
+        return this.stores.sum();
+    }
+
+    // stores that evicted another position
+    public long getOverwrites() {
+        return this.overwrites.sum();
+    }
+
+    // stores dropped to keep a deeper entry
+    public long getSkipped() {
+        return this.skipped.sum();
+    }
+
+    public void resetStats() {
+        this.probes.reset();
+        this.hits.reset();
+        this.stores.reset();
+        this.overwrites.reset();
+        this.skipped.reset();
+    }
+
+    @Override
+    public String toString() {
+        long p = this.getProbes();
+        return String.format("%d KB %s: probes: %d, hits: %d (%.1f%%), stores: %d, overwrites: %d, skipped: %d",
+            this.sizeInBytes() >> 10, this.policy, p, this.getHits(), (p == 0) ? 0.0 : 100.0 * this.getHits() / p,
+            this.getStores(), this.getOverwrites(), this.getSkipped());
+    }
+
+
+    public static void main(String[] args) {
+        int rows = (args.length >= 3) ? Integer.parseInt(args[0]) : 5;
+        int cols = (args.length >= 3) ? Integer.parseInt(args[1]) : 5;
+        int k = (args.length >= 3) ? Integer.parseInt(args[2]) : 4;
+        long millis = (args.length == 1 || args.length >= 4) ? Long.parseLong(args[(args.length >= 4) ? 3 : 0]) : 1000;
+        long mb = (args.length >= 5) ? Long.parseLong(args[4]) : 16;
+
+        // the same opening positions for every configuration
+        MnkBoard board = new MnkBoard(rows, cols, k);
+        SplittableRandom rng = new SplittableRandom(42);
+        long[][] openings = new long[8][];
+        for (int i = 0; i < openings.length; i++) {
+            long x = 0, o = 0;
+            for (int ply = 0; ply < 4; ply++) {
+                long empty = board.empty(x, o);
+                long bit = 0;
+                int n = rng.nextInt(Long.bitCount(empty));
+                for (long e = empty; ; e &= e - 1) {
+                    if (n-- == 0) {
+                        bit = e & -e;
+                        break;
+                    }
+                }
+                if (ply % 2 == 0) {
+                    x |= bit;
+                } else {
+                    o |= bit;
+                }
+            }
+            openings[i] = new long[] { x, o };
+        }
+
+        String[] names = new String[] { "none", "ALWAYS", "DEPTH_PREFERRED", "TWO_TIER", "TWO_TIER small" };
+        for (String name : names) {
+            TranspositionTable tt = name.equals("none") ? null
+                : new TranspositionTable(name.endsWith("small") ? 64 << 10 : mb << 20,
+                    Policy.valueOf(name.split(" ")[0]));
+            MnkStrat strat = new MnkStrat('X', board, millis, tt);
+            long nodes = 0, depth = 0, start = System.nanoTime();
+            for (long[] opening : openings) {
+                if (tt != null) {
+                    tt.newSearch();
+                }
+                strat.bestMove(opening[0], opening[1]);
+                nodes += strat.getNodes();
+                depth += strat.getDepth();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("[TranspositionTable] %-15s mean depth %.1f, %.0f nodes/move, %.0f knodes/s%s",
+                name, (double) depth / openings.length, (double) nodes / openings.length, nodes / (elapsed / 1e6),
+                (tt == null) ? "" : ", " + tt));
+        }
+    }
+}
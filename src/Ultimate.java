@@ -0,0 +1,279 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Ultimate tic-tac-toe: nine 3x3 sub-boards, each one a packed Board field,
+// and a meta-board field holding the sub-board results (X, O, or DRAW for a
+// full sub-board without a line). A move to sector s sends the opponent to
+// sub-board s, or anywhere if that one is decided; three sub-boards in a
+// row on the meta-board win.
+//
+// java -cp build Ultimate play [millis per move]              against UltimateStrat
+// java -cp build Ultimate selfplay [games] [depth] [threads]  headless
+//
+// Moves are ints, 9 * sub-board + sector. Positions are small and mutable;
+// searches keep one per ply and copy instead of undoing.
+public class Ultimate {
+    public static final int CELLS = Board.THREE_SQ * Board.THREE_SQ;
+    public static final int ANY = -1;
+
+    private final int[] subs = new int[Board.THREE_SQ];
+    private int meta = 0;
+    private int next = Ultimate.ANY;
+    private boolean xToMove = true;
+    private byte winner = Board.EMPTY;
+    private int plies = 0;
+
+
+    public Ultimate() {
+    }
+
+    public Ultimate(Ultimate other) {
+        this.copyFrom(other);
+    }
+
+    public void copyFrom(Ultimate other) {
+        System.arraycopy(other.subs, 0, this.subs, 0, Board.THREE_SQ);
+        this.meta = other.meta;
+        this.next = other.next;
+        this.xToMove = other.xToMove;
+        this.winner = other.winner;
+        this.plies = other.plies;
+    }
+
+
+    public static int move(int sub, int sector) {
+        return sub * Board.THREE_SQ + sector;
+    }
+
+    public static int sub(int move) {
+        return move / Board.THREE_SQ;
+    }
+
+    public static int sector(int move) {
+        return move % Board.THREE_SQ;
+    }
+
+    // 9-bit mask of the sub-boards the side to move may play in
+    public int legalSubs() {
+        if (this.winner != Board.EMPTY) {
+            return 0;
+        }
+        return (this.next == Ultimate.ANY) ? Board.legalMoves(this.meta) : 1 << this.next;
+    }
+
+    // 9-bit mask of the free sectors of a sub-board, 0 if it is decided
+    public int legalMoves(int sub) {
+        return (Board.getCell(this.meta, sub) == Board.EMPTY) ? Board.legalMoves(this.subs[sub]) : 0;
+    }
+
+    public boolean isLegal(int move) {
+        if (move < 0 || move >= Ultimate.CELLS) {
+            return false;
+        }
+        int sub = Ultimate.sub(move);
+        return (this.legalSubs() & (1 << sub)) != 0 && (this.legalMoves(sub) & (1 << Ultimate.sector(move))) != 0;
+    }
+
+    // plays a legal move for the side to move
+    public void play(int move) {
+        int sub = Ultimate.sub(move);
+        int sector = Ultimate.sector(move);
+        byte mark = this.xToMove ? Board.X : Board.O;
+        int field = Board.setCell(this.subs[sub], sector, mark);
+        this.subs[sub] = field;
+
+        byte local = Board.checkWin(field);
+        if (local != Board.EMPTY) {
+            this.meta = Board.setCell(this.meta, sub, local);
+            if (local == mark && Board.hasLine(this.meta, mark)) {
+                this.winner = mark;
+            } else if (Board.legalMoves(this.meta) == 0) {
+                this.winner = Board.DRAW;
+            }
+        }
+
+        this.next = (Board.getCell(this.meta, sector) == Board.EMPTY) ? sector : Ultimate.ANY;
+        this.xToMove = !this.xToMove;
+        this.plies++;
+    }
+
+    public int getSub(int sub) {
+        return this.subs[sub];
+    }
+
+    public int getMeta() {
+        return this.meta;
+    }
+
+    public int getNext() {
+        return this.next;
+    }
+
+    public boolean isXToMove() {
+        return this.xToMove;
+    }
+
+    public byte getWinner() {
+        return this.winner;
+    }
+
+    public boolean isOver() {
+        return this.winner != Board.EMPTY;
+    }
+
+    public int getPlies() {
+        return this.plies;
+    }
+
+    public String toString() {
+        String s = "";
+        for (int row = 0; row < Board.THREE_SQ; row++) {
+            for (int col = 0; col < Board.THREE_SQ; col++) {
+                int sub = (row / Board.THREE) * Board.THREE + col / Board.THREE;
+                int sector = (row % Board.THREE) * Board.THREE + col % Board.THREE;
+                byte local = Board.getCell(this.meta, sub);
+                byte cell = Board.getCell(this.subs[sub], sector);
+                s += (cell != Board.EMPTY) ? Board.symbol(cell)
+                    : (local != Board.EMPTY) ? ' '
+                    : ((this.legalSubs() & (1 << sub)) != 0) ? '.' : '\u00B7';
+                s += (col == Board.THREE_SQ - 1) ? "\n" : (col % Board.THREE == Board.THREE - 1) ? " \u2502 " : " ";
+            }
+            if (row % Board.THREE == Board.THREE - 1 && row != Board.THREE_SQ - 1) {
+                s += "\u2500\u2500\u2500\u2500\u2500\u2500\u253C\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u253C\u2500\u2500\u2500\u2500\u2500\u2500\n";
+            }
+        }
+        return s;
+    }
+
+
+    // per thread outcome counts, merged at the end
+    private static class Stats {
+        long xWins, oWins, draws, plies, moves, nanos;
+
+        void add(Stats s) {
+            this.xWins += s.xWins;
+            this.oWins += s.oWins;
+            this.draws += s.draws;
+            this.plies += s.plies;
+            this.moves += s.moves;
+            this.nanos += s.nanos;
+        }
+    }
+
+    // fixed depth self-play, the first two plies are random so the games differ
+    private static Stats selfPlay(long games, int depth) {
+        UltimateStrat strat = new UltimateStrat(depth, 0, 1);
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        Stats stats = new Stats();
+        for (long g = 0; g < games; g++) {
+            Ultimate game = new Ultimate();
+            while (!game.isOver()) {
+                int move;
+                if (game.getPlies() < 2) {
+                    move = game.randomMove(rng);
+                } else {
+                    long start = System.nanoTime();
+                    move = strat.bestMove(game);
+                    stats.nanos += System.nanoTime() - start;
+                    stats.moves++;
+                }
+                game.play(move);
+            }
+            stats.plies += game.getPlies();
+            if (game.getWinner() == Board.X) {
+                stats.xWins++;
+            } else if (game.getWinner() == Board.O) {
+                stats.oWins++;
+            } else {
+                stats.draws++;
+            }
+        }
+        return stats;
+    }
+
+    public int randomMove(ThreadLocalRandom rng) {
+        int subs = this.legalSubs();
+        int total = 0;
+        for (int s = subs; s != 0; s &= s - 1) {
+            total += Integer.bitCount(this.legalMoves(Integer.numberOfTrailingZeros(s)));
+        }
+        int n = rng.nextInt(total);
+        for (int s = subs; ; s &= s - 1) {
+            int sub = Integer.numberOfTrailingZeros(s);
+            int moves = this.legalMoves(sub);
+            if (n < Integer.bitCount(moves)) {
+                return Ultimate.move(sub, Board.nthMove(moves, n));
+            }
+            n -= Integer.bitCount(moves);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = (args.length >= 1) ? args[0] : "play";
+        Board.precompute();
+        if (mode.equals("selfplay")) {
+            long games = (args.length >= 2) ? Long.parseLong(args[1]) : 1000;
+            int depth = (args.length >= 3) ? Integer.parseInt(args[2]) : 4;
+            int threads = (args.length >= 4) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Stats>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                long share = games / threads + (t < games % threads ? 1 : 0);
+                futures.add(pool.submit(() -> Ultimate.selfPlay(share, depth)));
+            }
+            Stats total = new Stats();
+            for (Future<Stats> f : futures) {
+                total.add(f.get());
+            }
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+
+            System.out.println(String.format("%d games at depth %d on %d threads in %d ms (%.0f games/min)",
+                games, depth, threads, elapsed / 1000000, games * 60e9 / elapsed));
+            System.out.println(String.format("X wins: %d, O wins: %d, draws: %d, avg plies: %.1f, avg move: %.0f us",
+                total.xWins, total.oWins, total.draws, (double) total.plies / games, total.nanos / 1e3 / total.moves));
+            return;
+        }
+
+        long millis = (args.length >= 2) ? Long.parseLong(args[1]) : 1000;
+        UltimateStrat strat = new UltimateStrat(Ultimate.CELLS, millis, Runtime.getRuntime().availableProcessors());
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Ultimate game = new Ultimate();
+        System.out.println("You are X. Moves are \"<sub-board> <sector>\", both 0-8.");
+        while (!game.isOver()) {
+            System.out.println(game);
+            int move;
+            if (game.isXToMove()) {
+                String line = in.readLine();
+                if (line == null) {
+                    return;
+                }
+                String[] parts = line.trim().split("\\s+");
+                try {
+                    move = Ultimate.move(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                } catch (RuntimeException e) {
+                    move = -1;
+                }
+                if (!game.isLegal(move)) {
+                    System.out.println("Not a legal move, try again.");
+                    continue;
+                }
+            } else {
+                move = strat.bestMove(game);
+                System.out.println("O plays " + Ultimate.sub(move) + " " + Ultimate.sector(move)
+                    + " (depth " + strat.getDepth() + ", " + strat.getNodes() + " nodes)");
+            }
+            game.play(move);
+        }
+        System.out.println(game);
+        System.out.println(game.getWinner() == Board.DRAW ? "Draw." : Board.symbol(game.getWinner()) + " wins.");
+    }
+}
@@ -0,0 +1,371 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Alpha-beta player for Ultimate.
+//
+// Negamax with iterative deepening up to `maxDepth` plies or a time budget.
+// After the first root move has set alpha, the remaining root moves are
+// searched in parallel on the common fork-join pool, each with the best
+// alpha found so far; every worker thread keeps its own position stack,
+// killers and history, cleared when it joins a new search.
+//
+// Leaves are scored on the meta-board: decided sub-boards, open meta lines,
+// and for undecided sub-boards the 3x3 minimax value from the Solver table,
+// looked up once per field at class init.
+public class UltimateStrat {
+    public static final int WIN = 1_000_000;
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int CHECK_EVERY = 1023; // nodes between clock checks
+
+    private static final int[] SUB_WEIGHTS = new int[] { 3, 2, 3, 2, 4, 2, 3, 2, 3 };
+    private static final int WON = 6;
+    private static final int[] LINE_WEIGHTS = new int[] { 0, 4, 16, 0 };
+    private static final int[] META_LINES = new int[8];
+
+    // LOCAL[field] is the minimax value of an undecided sub-board field for
+    // X, once with X and once with O to move: -2 (O wins either way) to 2
+    private static final byte[] LOCAL = new byte[1 << 18];
+    static {
+        for (int i = 0; i < META_LINES.length; i++) {
+            META_LINES[i] = Lines.values()[i].getMask();
+        }
+
+        Board.precompute();
+        int[] digits = new int[] { Board.EMPTY, Board.X, Board.O };
+        for (int rank = 0; rank < 19683; rank++) {
+            int field = 0;
+            for (int i = 0, r = rank; i < Board.THREE_SQ; i++, r /= 3) {
+                field |= digits[r % 3] << (2 * i);
+            }
+            if (Board.checkWin(field) == Board.EMPTY) {
+                UltimateStrat.LOCAL[field] = (byte) (UltimateStrat.value(Board.minimax(field, true))
+                    + UltimateStrat.value(Board.minimax(field, false)));
+            }
+        }
+    }
+
+    private final int maxDepth;
+    private final long budgetNanos;
+    private final int threads;
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+    private long start;
+    private int searchId; // bumped per bestMove, tells Searches to clear
+    private volatile boolean aborted;
+    private int depth;
+    private long nodes;
+
+
+    // stops at `maxDepth` or after `budgetMillis` (none if <= 0), searches
+    // the root moves on up to `threads` threads
+    public UltimateStrat(int maxDepth, long budgetMillis, int threads) {
+        this.maxDepth = maxDepth;
+        this.budgetNanos = (budgetMillis > 0) ? budgetMillis * 1000000L : Long.MAX_VALUE;
+        this.threads = threads;
+    }
+
+
+    private static int value(byte minimax) {
+        return (minimax == Board.X) ? 1 : (minimax == Board.O) ? -1 : 0;
+    }
+
+    // from the point of view of the side to move
+    public static int evaluate(Ultimate pos) {
+        int meta = pos.getMeta();
+        int score = 0;
+        for (int sub = 0; sub < Board.THREE_SQ; sub++) {
+            byte result = Board.getCell(meta, sub);
+            int v = (result == Board.X) ? UltimateStrat.WON
+                : (result == Board.O) ? -UltimateStrat.WON
+                : (result == Board.DRAW) ? 0
+                : UltimateStrat.LOCAL[pos.getSub(sub)];
+            score += UltimateStrat.SUB_WEIGHTS[sub] * v;
+        }
+
+        int x = Board.xMask(meta);
+        int o = Board.oMask(meta);
+        int drawn = ~(Board.legalMoves(meta) | x | o) & 0x1FF;
+        for (int line : UltimateStrat.META_LINES) {
+            if ((line & (o | drawn)) == 0) {
+                score += UltimateStrat.LINE_WEIGHTS[Integer.bitCount(line & x)];
+            } else if ((line & (x | drawn)) == 0) {
+                score -= UltimateStrat.LINE_WEIGHTS[Integer.bitCount(line & o)];
+            }
+        }
+        return pos.isXToMove() ? score : -score;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    // best move for the side to move, -1 if the game is over
+    public int bestMove(Ultimate pos) {
+        this.searchId++;
+        Search main = this.searches.get();
+        main.prepare(this.searchId);
+        int n = main.generate(pos, 0);
+        if (n == 0) {
+            return -1;
+        }
+        int[] rootMoves = new int[n];
+        System.arraycopy(main.moves[0], 0, rootMoves, 0, n);
+        int[] rootScores = new int[n];
+        if (n == 1) {
+            this.depth = 0;
+            this.nodes = 0;
+            return rootMoves[0];
+        }
+
+        this.start = System.nanoTime();
+        this.aborted = false;
+        this.nodes = 0;
+        int best = rootMoves[0];
+        for (int depth = 1; depth <= this.maxDepth; depth++) {
+            int move = this.searchRoot(pos, depth, rootMoves, rootScores);
+            if (this.aborted) {
+                break;
+            }
+            best = move;
+            this.depth = depth;
+            if (rootScores[0] >= UltimateStrat.WIN - Ultimate.CELLS) {
+                break; // a forced win, deeper searches will not change it
+            }
+
+            // best first, then the others by this iteration's scores
+            for (int i = 1; i < n; i++) {
+                int m = rootMoves[i], s = rootScores[i];
+                int j = i - 1;
+                while (j >= 0 && rootScores[j] < s) {
+                    rootMoves[j + 1] = rootMoves[j];
+                    rootScores[j + 1] = rootScores[j];
+                    j--;
+                }
+                rootMoves[j + 1] = m;
+                rootScores[j + 1] = s;
+            }
+        }
+        return best;
+    }
+
+    // leaves the exact score of the best move and upper bounds for the
+    // others in `scores`, with the best move swapped to the front; of moves
+    // with the same score the first in `moves` wins, whatever the order the
+    // threads searched them in
+    private int searchRoot(Ultimate pos, int depth, int[] moves, int[] scores) {
+        Search main = this.searches.get();
+        scores[0] = main.searchMove(pos, moves[0], depth, -UltimateStrat.INF);
+        this.nodes += main.takeNodes();
+        if (this.aborted) {
+            return moves[0];
+        }
+
+        // a score above the alpha a move was searched with is exact, one at
+        // or below it only a bound
+        boolean[] exact = new boolean[moves.length];
+        exact[0] = true;
+        AtomicInteger alpha = new AtomicInteger(scores[0]);
+        if (this.threads <= 1) {
+            for (int i = 1; i < moves.length && !this.aborted; i++) {
+                int a = alpha.get();
+                scores[i] = main.searchMove(pos, moves[i], depth, a);
+                exact[i] = scores[i] > a;
+                alpha.accumulateAndGet(scores[i], Math::max);
+            }
+            this.nodes += main.takeNodes();
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(moves.length - 1);
+            for (int i = 1; i < moves.length; i++) {
+                int index = i;
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    Search search = this.searches.get();
+                    int a = alpha.get();
+                    scores[index] = search.searchMove(pos, moves[index], depth, a);
+                    exact[index] = scores[index] > a;
+                    alpha.accumulateAndGet(scores[index], Math::max);
+                    long n = search.takeNodes();
+                    synchronized (this) {
+                        this.nodes += n;
+                    }
+                }));
+            }
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            for (ForkJoinTask<?> task : tasks) {
+                pool.execute(task);
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+
+        // a bound can only tie the best exact score; search those moves again
+        // with a window just below it to learn whether they really do
+        int bestScore = -UltimateStrat.INF;
+        for (int i = 0; i < moves.length; i++) {
+            if (exact[i]) {
+                bestScore = Math.max(bestScore, scores[i]);
+            }
+        }
+        for (int i = 1; i < moves.length && !this.aborted; i++) {
+            if (!exact[i] && scores[i] == bestScore) {
+                scores[i] = main.searchMove(pos, moves[i], depth, bestScore - 1);
+                exact[i] = scores[i] > bestScore - 1;
+            }
+        }
+        this.nodes += main.takeNodes();
+
+        int best = 0;
+        for (int i = 1; i < moves.length; i++) {
+            if (exact[i] && scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best], score = scores[best];
+        moves[best] = moves[0];
+        scores[best] = scores[0];
+        moves[0] = move;
+        scores[0] = score;
+        return move;
+    }
+
+
+    // per thread search state
+    private class Search {
+        final Ultimate[] stack = new Ultimate[Ultimate.CELLS + 2];
+        final int[][] moves = new int[Ultimate.CELLS + 1][Ultimate.CELLS];
+        final int[][] scores = new int[Ultimate.CELLS + 1][Ultimate.CELLS];
+        final int[][] killers = new int[Ultimate.CELLS + 1][2];
+        final int[][] history = new int[2][Ultimate.CELLS];
+        long nodes;
+        int searchId = -1;
+
+        Search() {
+            for (int i = 0; i < this.stack.length; i++) {
+                this.stack[i] = new Ultimate();
+            }
+        }
+
+        // killers and history only hold for the search that found them
+        void prepare(int searchId) {
+            if (this.searchId == searchId) {
+                return;
+            }
+            this.searchId = searchId;
+            for (int[] k : this.killers) {
+                k[0] = k[1] = -1;
+            }
+            for (int[] h : this.history) {
+                Arrays.fill(h, 0);
+            }
+        }
+
+        long takeNodes() {
+            long n = this.nodes;
+            this.nodes = 0;
+            return n;
+        }
+
+        // score of `move` from the point of view of the side to move in
+        // `pos`; a bound at or below `alpha` if the move is no better
+        int searchMove(Ultimate pos, int move, int depth, int alpha) {
+            this.prepare(UltimateStrat.this.searchId);
+            Ultimate child = this.stack[1];
+            child.copyFrom(pos);
+            child.play(move);
+            return -this.negamax(1, depth - 1, -UltimateStrat.INF, -alpha);
+        }
+
+        private int negamax(int ply, int depth, int alpha, int beta) {
+            if ((++this.nodes & UltimateStrat.CHECK_EVERY) == 0
+                && System.nanoTime() - UltimateStrat.this.start > UltimateStrat.this.budgetNanos) {
+                UltimateStrat.this.aborted = true;
+            }
+            if (UltimateStrat.this.aborted) {
+                return 0;
+            }
+
+            Ultimate pos = this.stack[ply];
+            if (pos.isOver()) {
+                // the side that just moved won, sooner is better
+                return (pos.getWinner() == Board.DRAW) ? 0 : -UltimateStrat.WIN + ply;
+            }
+            if (depth == 0) {
+                return UltimateStrat.evaluate(pos);
+            }
+
+            int n = this.generate(pos, ply);
+            int side = pos.isXToMove() ? 0 : 1;
+            Ultimate child = this.stack[ply + 1];
+            for (int i = 0; i < n; i++) {
+                int move = this.moves[ply][i];
+                child.copyFrom(pos);
+                child.play(move);
+                int score = -this.negamax(ply + 1, depth - 1, -beta, -alpha);
+                if (UltimateStrat.this.aborted) {
+                    return 0;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                }
+                if (alpha >= beta) {
+                    if (this.killers[ply][0] != move) {
+                        this.killers[ply][1] = this.killers[ply][0];
+                        this.killers[ply][0] = move;
+                    }
+                    this.history[side][move] += depth * depth;
+                    break;
+                }
+            }
+            return alpha;
+        }
+
+        // fills moves[ply] with the legal moves, sub-board wins and killers
+        // first, then by history; returns how many
+        int generate(Ultimate pos, int ply) {
+            int[] moves = this.moves[ply];
+            int[] scores = this.scores[ply];
+            int side = pos.isXToMove() ? 0 : 1;
+            byte mark = pos.isXToMove() ? Board.X : Board.O;
+            int n = 0;
+            for (int subs = pos.legalSubs(); subs != 0; subs &= subs - 1) {
+                int sub = Integer.numberOfTrailingZeros(subs);
+                int field = pos.getSub(sub);
+                for (int free = pos.legalMoves(sub); free != 0; free &= free - 1) {
+                    int sector = Integer.numberOfTrailingZeros(free);
+                    int move = Ultimate.move(sub, sector);
+                    int score = this.history[side][move];
+                    if (Board.hasLine(Board.setCell(field, sector, mark), mark)) {
+                        score = UltimateStrat.INF - 1;
+                    } else if (move == this.killers[ply][0]) {
+                        score = UltimateStrat.INF - 2;
+                    } else if (move == this.killers[ply][1]) {
+                        score = UltimateStrat.INF - 3;
+                    }
+                    moves[n] = move;
+                    scores[n] = score;
+                    n++;
+                }
+            }
+
+            for (int i = 1; i < n; i++) {
+                int move = moves[i], score = scores[i];
+                int j = i - 1;
+                while (j >= 0 && scores[j] < score) {
+                    moves[j + 1] = moves[j];
+                    scores[j + 1] = scores[j];
+                    j--;
+                }
+                moves[j + 1] = move;
+                scores[j + 1] = score;
+            }
+            return n;
+        }
+    }
+}